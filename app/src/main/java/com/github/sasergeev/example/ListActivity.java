@@ -35,6 +35,7 @@ public class ListActivity extends AppCompatActivity {
                 .url("https://dummyapi.io/data/v1/") // it's API for testing pagination
                 .uri("user?page={page}}&limit={limit}") // number of page and limit of items
                 .headers(Collections.singletonMap("app-id", "63fdd7aae0280133037f1a93")) // add additional header for calling API
+                .scope(this) // requests and callbacks are cancelled when activity is destroyed
                 .get(page, 10)
                 .before(() -> progress.setVisibility(View.VISIBLE))
                 .finish(() -> progress.setVisibility(View.INVISIBLE))
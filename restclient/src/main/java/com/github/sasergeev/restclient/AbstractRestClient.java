@@ -1,9 +1,7 @@
 package com.github.sasergeev.restclient;
 
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 import androidx.core.os.HandlerCompat;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
@@ -12,32 +10,38 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.OkHttpClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClientException;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Serializable;
 import java.util.Date;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-public abstract class AbstractRestClient {
+public abstract class AbstractRestClient implements Cancellable {
 
-    private final ExecutorService executorService;
-    private final RestTemplate restTemplate;
-    private final Message message;
+    private final RestDispatcher dispatcher;
+    private RestEngine restEngine;
     private final Handler handler;
+    private final Set<RestCall> calls = ConcurrentHashMap.newKeySet();
+    private RestScope scope;
+    private RetryPolicy retryPolicy;
+    private boolean idempotencyKey;
+    private long deadlineNanos;
+    private volatile boolean cancelled;
     private HttpHeaders httpHeaders;
     private HttpMethod httpMethod;
     private Runnable before;
@@ -48,27 +52,41 @@ public abstract class AbstractRestClient {
     private BiConsumer<ByteArrayOutputStream, HttpHeaders> onLoad;
 
     public AbstractRestClient() {
-        this.executorService = Executors.newCachedThreadPool();
-        this.restTemplate = new RestTemplate();
-        this.message = Message.obtain();
-        this.handler = HandlerCompat.createAsync(Looper.getMainLooper());
-        this.httpHeaders = new HttpHeaders();
+        this(RestDispatcher.getDefault());
     }
 
-    private ResponseEntity<Resource> execute(Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), HttpMethod.GET, new HttpEntity<>(buildHeaders()), Resource.class, params);
+    public AbstractRestClient(RestDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        this.restEngine = RestEngine.getDefault();
+        this.handler = HandlerCompat.createAsync(Looper.getMainLooper());
+        this.httpHeaders = new HttpHeaders();
     }
 
-    private <S> ResponseEntity<S> execute(HttpMethod httpMethod, Class<S> responseType, Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), httpMethod, new HttpEntity<>(buildHeaders()), responseType, params);
+    private ResponseEntity<Resource> execute(RestEngine engine, String url, HttpEntity<?> httpEntity, Object... params) {
+        return engine.exchange(url, HttpMethod.GET, httpEntity, Resource.class, params);
     }
 
-    private <S, T> ResponseEntity<S> execute(HttpMethod httpMethod, T request, Class<S> responseType, Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), httpMethod, new HttpEntity<>(request, buildHeaders()), responseType, params);
+    /**
+     * Blocking exchange in current task of dispatcher, its outcome is passed to handler.
+     * With retry policy failed attempt is run again in new task after backoff.
+     */
+    private <S> void execute(RestCall call, RestEngine engine, String url, HttpMethod httpMethod, HttpEntity<?> httpEntity, Class<S> responseType,
+                             Consumer<Supplier<ResponseEntity<S>>> handler, Object... params) {
+        Supplier<ResponseEntity<S>> exchange = () -> engine.exchange(url, httpMethod, httpEntity, responseType, params);
+        RetryPolicy policy = retryPolicy;
+        if (policy == null || !RetryPolicy.isRetryable(httpMethod, idempotencyKey))
+            handler.accept(exchange);
+        else
+            policy.execute(dispatcher, url, RestDispatcher.Priority.NORMAL, call, exchange, handler);
     }
 
+    /**
+     * Copy of current headers, so next requests don't change headers of already queued one
+     */
     private HttpHeaders buildHeaders() {
-        return this.httpHeaders;
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(this.httpHeaders);
+        return headers;
     }
 
     protected void setHttpHeaders(HttpHeaders httpHeaders) {
@@ -99,92 +117,134 @@ public abstract class AbstractRestClient {
         this.onLoad = onLoad;
     }
 
+    protected void setScope(RestScope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Retry policy for idempotent methods, with idempotency key in headers POST and PATCH are retried too
+     */
+    protected void setRetryPolicy(RetryPolicy retryPolicy, boolean idempotencyKey) {
+        this.retryPolicy = retryPolicy;
+        this.idempotencyKey = idempotencyKey;
+    }
+
     protected abstract String buildRequestUrl();
 
-    protected void executeRequest(String filePath,
-                                  OnError onError,
-                                  Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
+    protected RestCall executeRequest(String filePath,
+                                      OnError onError,
+                                      Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, RestDispatcher.Priority.BACKGROUND, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
             try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                process(execute(params), filePath, onError, onProgress, onDownload);
+                Optional.ofNullable(execute).ifPresent(call::post);
+                process(call, execute(engine, url, httpEntity, params), filePath, onError, onProgress, onDownload);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
-                Optional.ofNullable(onError).
-                        ifPresent(error -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode())));
             } catch (ResourceAccessException e) {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error(e.getMessage(), null, HttpStatus.SERVICE_UNAVAILABLE));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, networkStatus(call))));
+            } catch (RestClientException e) {
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR)));
             } finally {
-                Optional.ofNullable(after).ifPresent(handler::post);
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
     }
 
-    protected void executeRequest(OnError onError,
-                                  Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
+    protected RestCall executeRequest(OnError onError,
+                                      Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, RestDispatcher.Priority.BACKGROUND, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
             try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                process(execute(params), onError, onLoad);
+                Optional.ofNullable(execute).ifPresent(call::post);
+                process(call, execute(engine, url, httpEntity, params), onError, onLoad);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
-                Optional.ofNullable(onError).
-                        ifPresent(error -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode())));
             } catch (ResourceAccessException e) {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error(e.getMessage(), null, HttpStatus.SERVICE_UNAVAILABLE));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, networkStatus(call))));
+            } catch (RestClientException e) {
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR)));
             } finally {
-                Optional.ofNullable(after).ifPresent(handler::post);
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
     }
 
-    protected <S, T> void executeRequest(T body,
-                                         Class<S> responseType,
-                                         OnSuccess<S> onSuccess,
-                                         OnError onError,
-                                         Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
-            ResponseEntity<?> responseEntity = null;
-            try {
-                responseEntity = execute(httpMethod, body, responseType, params);
-                Optional.ofNullable(execute).ifPresent(handler::post);
-            } catch (HttpClientErrorException | HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-            } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
-            } finally {
-                Optional.ofNullable(responseEntity).ifPresent(this:: executeResponse);
-                handleMessage(message, responseType, onSuccess, onError);
-                executorService.shutdown();
-            }
-        });
+    protected <S, T> RestCall executeRequest(T body,
+                                             Class<S> responseType,
+                                             OnSuccess<S> onSuccess,
+                                             OnError onError,
+                                             Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpMethod method = httpMethod;
+        HttpEntity<?> httpEntity = new HttpEntity<>(body, buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
+            execute(call, engine, url, method, httpEntity, responseType, outcome -> {
+                RestResult<S> result = null;
+                try {
+                    result = RestResult.of(outcome.get());
+                    Optional.ofNullable(execute).ifPresent(call::post);
+                } catch (HttpClientErrorException | HttpServerErrorException e) {
+                    result = RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), e.getStatusCode());
+                } catch (ResourceAccessException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), networkStatus(call));
+                } catch (RestClientException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                } finally {
+                    handleResult(call, result, onSuccess, onError);
+                }
+            }, params);
+        }));
+        return call;
     }
 
-    protected <S> void executeRequest(Class<S> responseType,
-                                      OnSuccess<S> onSuccess,
-                                      OnError onError,
-                                      Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
-            ResponseEntity<?> responseEntity = null;
-            try {
-                responseEntity = execute(httpMethod, responseType, params);
-                Optional.ofNullable(execute).ifPresent(handler::post);
-            } catch (HttpClientErrorException | HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-            } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
-            } finally {
-                Optional.ofNullable(responseEntity).ifPresent(this::executeResponse);
-                handleMessage(message, responseType, onSuccess, onError);
-                executorService.shutdown();
-            }
-        });
+    protected <S> RestCall executeRequest(Class<S> responseType,
+                                          OnSuccess<S> onSuccess,
+                                          OnError onError,
+                                          Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpMethod method = httpMethod;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
+            execute(call, engine, url, method, httpEntity, responseType, outcome -> {
+                RestResult<S> result = null;
+                try {
+                    result = RestResult.of(outcome.get());
+                    Optional.ofNullable(execute).ifPresent(call::post);
+                } catch (HttpClientErrorException | HttpServerErrorException e) {
+                    result = RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), e.getStatusCode());
+                } catch (ResourceAccessException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), networkStatus(call));
+                } catch (RestClientException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                } finally {
+                    handleResult(call, result, onSuccess, onError);
+                }
+            }, params);
+        }));
+        return call;
     }
 
     protected void setMethod(HttpMethod httpMethod) {
@@ -192,39 +252,79 @@ public abstract class AbstractRestClient {
     }
 
     protected void setSsl(InputStream inputStream) {
-        this.restTemplate.setRequestFactory(new OkHttpClientHttpRequestFactory(SSLHttpClient.getInstance(inputStream)));
+        this.restEngine = RestEngine.ssl(inputStream);
     }
 
-    private void executeResponse(ResponseEntity<?> responseEntity) {
-        Bundle bundle = new Bundle();
-        message.setTarget(handler);
-        message.setData(bundle);
-        HttpStatus httpStatus = responseEntity.getStatusCode();
-        bundle.putInt("Status", httpStatus.value());
-        bundle.putSerializable("Headers", responseEntity.getHeaders());
-        if (httpStatus.is2xxSuccessful()) {
-            bundle.putSerializable("Object", (Serializable) responseEntity.getBody());
-        } else if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError()) {
-            bundle.putString("Message", (String) responseEntity.getBody());
-        }
+    protected void setTimeouts(long connectTimeout, long readTimeout, long writeTimeout, TimeUnit unit) {
+        this.restEngine = restEngine.withTimeouts(connectTimeout, readTimeout, writeTimeout, unit);
     }
 
-    private <S> void handleMessage(Message message, Class<S> responseType, OnSuccess<S> onSuccess, OnError onError) {
-        handler.post(() -> {
-            HttpStatus httpStatus = HttpStatus.valueOf(message.getData().getInt("Status"));
-            if (httpStatus.is2xxSuccessful()) {
-                S object = responseType.cast(message.getData().getSerializable("Object"));
+    protected void setDeadline(long timeout, TimeUnit unit) {
+        this.deadlineNanos = unit.toNanos(timeout);
+    }
+
+    protected void setTransport(RestEngine.Transport transport) {
+        this.restEngine = restEngine.withTransport(transport);
+    }
+
+    private <S> void handleResult(RestCall call, RestResult<S> result, OnSuccess<S> onSuccess, OnError onError) {
+        call.post(() -> {
+            if (result != null && result.isSuccessful()) {
                 Optional.ofNullable(onSuccess)
-                        .ifPresent(s -> s.success(object, (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus));
-            } else {
+                        .ifPresent(s -> s.success(result.getBody(), result.getHeaders(), result.getStatus()));
+            } else if (result != null) {
                 Optional.ofNullable(onError)
-                        .ifPresent(e -> e.error(message.getData().getString("Message"), (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus));
+                        .ifPresent(e -> e.error(result.getMessage(), result.getHeaders(), result.getStatus()));
             }
-            Optional.ofNullable(after).ifPresent(handler::post);
+            finish(call);
         });
     }
 
-    private void process(ResponseEntity<Resource> responseEntity,
+    private void finish(RestCall call) {
+        call.post(() -> {
+            Optional.ofNullable(after).ifPresent(Runnable::run);
+            call.finish();
+        });
+    }
+
+    /**
+     * Cancel all requests started by this client, next ones are not started
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (RestCall call : calls) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Status of network error: 504 if deadline of call has passed, 503 otherwise
+     */
+    private static HttpStatus networkStatus(RestCall call) {
+        return call.isExpired() ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    private RestCall newCall() {
+        RestCall call = new RestCall(handler);
+        calls.add(call);
+        call.whenFinished(() -> calls.remove(call));
+        if (scope != null)
+            scope.join(call);
+        if (cancelled)
+            call.cancel();
+        else if (deadlineNanos > 0)
+            call.expireAfter(deadlineNanos, TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    private void process(RestCall call,
+                         ResponseEntity<Resource> responseEntity,
                          String filePath,
                          OnError onError,
                          Consumer<Integer> onProgress,
@@ -240,7 +340,7 @@ public abstract class AbstractRestClient {
             int count;
             int total = 0;
             int progress;
-            while ((count = inputStream.read(buffer)) != -1) {
+            while (!call.isCancelled() && (count = inputStream.read(buffer)) != -1) {
                 outputStream.write(buffer, 0, count);
                 total += count;
                 try {
@@ -248,30 +348,33 @@ public abstract class AbstractRestClient {
                         Thread.sleep(1);
                         progress = total * 100 / size;
                         int finalProgress = progress;
-                        handler.post(() -> onProgress.accept(finalProgress));
+                        call.post(() -> onProgress.accept(finalProgress));
                     }
                 } catch (InterruptedException e) {
-                    Optional.ofNullable(onError)
-                            .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                    Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                            .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
                 }
             }
             outputStream.flush();
             outputStream.close();
             inputStream.close();
-            if (total == size) {
+            if (call.isCancelled()) {
+                new File(file).delete();
+            } else if (total == size) {
                 Optional.ofNullable(onDownload)
-                        .ifPresent(download -> handler.post(() -> download.accept(file, mediaType.toString())));
+                        .ifPresent(download -> call.post(() -> download.accept(file, mediaType.toString())));
             } else {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error("Error while during downloading file", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error("Error while during downloading file", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
             }
         } catch (IOException e) {
-            Optional.ofNullable(onError)
-                    .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+            Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                    .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
         }
     }
 
-    private void process(ResponseEntity<Resource> responseEntity,
+    private void process(RestCall call,
+                         ResponseEntity<Resource> responseEntity,
                          OnError onError,
                          BiConsumer<ByteArrayOutputStream, HttpHeaders> onLoad) {
         try {
@@ -282,23 +385,25 @@ public abstract class AbstractRestClient {
             byte[] data = new byte[4096];
             int count;
             int total = 0;
-            while ((count = inputStream.read(data, 0, data.length)) != -1) {
+            while (!call.isCancelled() && (count = inputStream.read(data, 0, data.length)) != -1) {
                 buffer.write(data, 0, count);
                 total += count;
             }
             buffer.flush();
             buffer.close();
             inputStream.close();
+            if (call.isCancelled())
+                return;
             if (total == size) {
                 Optional.ofNullable(onLoad)
-                        .ifPresent(load -> handler.post(() -> load.accept(buffer, httpHeaders)));
+                        .ifPresent(load -> call.post(() -> load.accept(buffer, httpHeaders)));
             } else {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error("Error while during loading data", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error("Error while during loading data", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
             }
         } catch (IOException e) {
-            Optional.ofNullable(onError)
-                    .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+            Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                    .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
         }
     }
 
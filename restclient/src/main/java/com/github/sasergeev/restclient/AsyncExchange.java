@@ -0,0 +1,287 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request run as OkHttp call, enqueued to its dispatcher instead of blocking worker thread for the whole round trip
+ * or executed in worker thread. Body is written and read by message converters of engine.
+ * Calls are bound to their {@link RestCall}, so cancelling it cancels only own streams and never closes pooled connection.
+ */
+final class AsyncExchange<S> implements Callback {
+    private final List<HttpMessageConverter<?>> messageConverters;
+    private final Class<S> responseType;
+    private final ExchangeCallback<S> callback;
+
+    private AsyncExchange(List<HttpMessageConverter<?>> messageConverters, Class<S> responseType, ExchangeCallback<S> callback) {
+        this.messageConverters = messageConverters;
+        this.responseType = responseType;
+        this.callback = callback;
+    }
+
+    static <S> Call enqueue(OkHttpClient okHttpClient,
+                            List<HttpMessageConverter<?>> messageConverters,
+                            RestCall restCall,
+                            URI uri,
+                            HttpMethod httpMethod,
+                            HttpEntity<?> httpEntity,
+                            Class<S> responseType,
+                            ExchangeCallback<S> callback) {
+        AsyncExchange<S> exchange = new AsyncExchange<>(messageConverters, responseType, callback);
+        Call call;
+        try {
+            call = okHttpClient.newCall(exchange.buildRequest(restCall, uri, httpMethod, httpEntity));
+        } catch (IOException | RuntimeException e) {
+            callback.onFailure(new RestClientException("Could not write request: " + e.getMessage(), e));
+            return null;
+        }
+        call.enqueue(exchange);
+        return call;
+    }
+
+    /**
+     * Execute request in current thread, OkHttp call is attached to rest call before it is sent
+     */
+    static <S> ResponseEntity<S> execute(OkHttpClient okHttpClient,
+                                         List<HttpMessageConverter<?>> messageConverters,
+                                         RestCall restCall,
+                                         URI uri,
+                                         HttpMethod httpMethod,
+                                         HttpEntity<?> httpEntity,
+                                         Class<S> responseType) throws RestClientException {
+        AsyncExchange<S> exchange = new AsyncExchange<>(messageConverters, responseType, null);
+        Request request;
+        try {
+            request = exchange.buildRequest(restCall, uri, httpMethod, httpEntity);
+        } catch (IOException | RuntimeException e) {
+            throw new RestClientException("Could not write request: " + e.getMessage(), e);
+        }
+        Call call = okHttpClient.newCall(request);
+        if (restCall != null)
+            restCall.attach(call);
+        Response response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            throw ioError(request, e);
+        }
+        return exchange.responseEntity(response);
+    }
+
+    /**
+     * Headers of entity are copied only to resolve Accept or to set content type of body,
+     * entity of prepared request is sent as it is
+     */
+    private Request buildRequest(RestCall restCall, URI uri, HttpMethod httpMethod, HttpEntity<?> httpEntity) throws IOException {
+        HttpHeaders requestHeaders = httpEntity.getHeaders();
+        if (httpEntity.hasBody() || !requestHeaders.containsKey(HttpHeaders.ACCEPT)) {
+            requestHeaders = new HttpHeaders();
+            requestHeaders.putAll(httpEntity.getHeaders());
+            if (!requestHeaders.containsKey(HttpHeaders.ACCEPT))
+                requestHeaders.setAccept(acceptableMediaTypes(messageConverters, responseType));
+        }
+        RequestBody requestBody = null;
+        byte[] body = write(messageConverters, httpEntity, requestHeaders);
+        if (body != null) {
+            MediaType contentType = requestHeaders.getContentType();
+            requestBody = RequestBody.create(contentType != null ? com.squareup.okhttp.MediaType.parse(contentType.toString()) : null, body);
+        } else if (httpMethod == HttpMethod.POST || httpMethod == HttpMethod.PUT || httpMethod == HttpMethod.PATCH) {
+            requestBody = RequestBody.create(null, new byte[0]);
+        }
+        Request.Builder builder = new Request.Builder().url(uri.toURL()).tag(restCall);
+        for (Map.Entry<String, List<String>> entry : requestHeaders.entrySet()) {
+            for (String value : entry.getValue()) {
+                builder.addHeader(entry.getKey(), value);
+            }
+        }
+        return builder.method(httpMethod.name(), requestBody).build();
+    }
+
+    /**
+     * Body of entity written by message converters or null if entity has no body, content type is set to headers
+     */
+    @SuppressWarnings("unchecked")
+    static byte[] write(List<HttpMessageConverter<?>> messageConverters, HttpEntity<?> httpEntity, HttpHeaders headers) throws IOException {
+        if (!httpEntity.hasBody())
+            return null;
+        Object body = httpEntity.getBody();
+        MediaType contentType = headers.getContentType();
+        BufferedOutputMessage outputMessage = new BufferedOutputMessage(headers);
+        for (HttpMessageConverter<?> converter : messageConverters) {
+            if (converter.canWrite(body.getClass(), contentType)) {
+                ((HttpMessageConverter<Object>) converter).write(body, contentType, outputMessage);
+                return outputMessage.toByteArray();
+            }
+        }
+        throw new RestClientException("No HttpMessageConverter for " + body.getClass().getName() + " and content type " + contentType);
+    }
+
+    static List<MediaType> acceptableMediaTypes(List<HttpMessageConverter<?>> messageConverters, Class<?> responseType) {
+        List<MediaType> mediaTypes = new ArrayList<>();
+        for (HttpMessageConverter<?> converter : messageConverters) {
+            if (converter.canRead(responseType, null)) {
+                for (MediaType mediaType : converter.getSupportedMediaTypes()) {
+                    mediaTypes.add(mediaType.getCharSet() != null ? new MediaType(mediaType.getType(), mediaType.getSubtype()) : mediaType);
+                }
+            }
+        }
+        MediaType.sortBySpecificity(mediaTypes);
+        return mediaTypes;
+    }
+
+    @Override
+    public void onFailure(Request request, IOException e) {
+        callback.onFailure(ioError(request, e));
+    }
+
+    @Override
+    public void onResponse(Response response) {
+        ResponseEntity<S> responseEntity;
+        try {
+            responseEntity = responseEntity(response);
+        } catch (RestClientException e) {
+            callback.onFailure(e);
+            return;
+        }
+        callback.onResponse(responseEntity);
+    }
+
+    /**
+     * Entity of response read by message converters, 4xx and 5xx are thrown as RestTemplate does, body is always closed
+     */
+    private ResponseEntity<S> responseEntity(Response response) throws RestClientException {
+        try {
+            HttpHeaders responseHeaders = new HttpHeaders();
+            for (String name : response.headers().names()) {
+                responseHeaders.put(name, response.headers(name));
+            }
+            HttpStatus httpStatus = HttpStatus.valueOf(response.code());
+            if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError())
+                throw statusError(httpStatus, response.message(), responseHeaders, response.body().bytes());
+            return new ResponseEntity<>(read(response, responseHeaders), responseHeaders, httpStatus);
+        } catch (IOException e) {
+            throw ioError(response.request(), e);
+        } catch (RestClientException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RestClientException("Could not read response: " + e.getMessage(), e);
+        } finally {
+            try {
+                response.body().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static ResourceAccessException ioError(Request request, IOException e) {
+        return new ResourceAccessException("I/O error on " + request.method() + " request for \"" + request.urlString() + "\": " + e.getMessage(), e);
+    }
+
+    /**
+     * Exception for 4xx or 5xx status, same as RestTemplate throws
+     */
+    static RestClientException statusError(HttpStatus httpStatus, String statusText, HttpHeaders responseHeaders, byte[] body) {
+        if (httpStatus.is4xxClientError())
+            return new HttpClientErrorException(httpStatus, statusText, responseHeaders, body, charset(responseHeaders));
+        return new HttpServerErrorException(httpStatus, statusText, responseHeaders, body, charset(responseHeaders));
+    }
+
+    private S read(Response response, HttpHeaders responseHeaders) throws IOException {
+        return read(messageConverters, responseType, responseHeaders, response.body().byteStream(), response.body().contentLength());
+    }
+
+    /**
+     * Body read by message converters, null for empty body or Void type
+     */
+    @SuppressWarnings("unchecked")
+    static <S> S read(List<HttpMessageConverter<?>> messageConverters,
+                      Class<S> responseType,
+                      HttpHeaders responseHeaders,
+                      InputStream body,
+                      long contentLength) throws IOException {
+        if (responseType == null || Void.class == responseType || contentLength == 0)
+            return null;
+        MediaType contentType = responseHeaders.getContentType() != null ? responseHeaders.getContentType() : MediaType.APPLICATION_OCTET_STREAM;
+        HttpInputMessage inputMessage = new HttpInputMessage() {
+            @Override
+            public InputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return responseHeaders;
+            }
+        };
+        for (HttpMessageConverter<?> converter : messageConverters) {
+            if (converter.canRead(responseType, contentType))
+                return ((HttpMessageConverter<S>) converter).read(responseType, inputMessage);
+        }
+        throw new RestClientException("No HttpMessageConverter for " + responseType.getName() + " and content type " + contentType);
+    }
+
+    private static Charset charset(HttpHeaders headers) {
+        MediaType contentType = headers.getContentType();
+        return contentType != null ? contentType.getCharSet() : null;
+    }
+
+    /**
+     * Result of enqueued request, called on OkHttp dispatcher thread
+     */
+    interface ExchangeCallback<S> {
+        void onResponse(ResponseEntity<S> responseEntity);
+
+        void onFailure(RestClientException exception);
+    }
+
+    private static final class BufferedOutputMessage implements HttpOutputMessage {
+        private final HttpHeaders headers;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private BufferedOutputMessage(HttpHeaders headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        private byte[] toByteArray() {
+            return body.toByteArray();
+        }
+    }
+}
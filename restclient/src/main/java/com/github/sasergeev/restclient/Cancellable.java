@@ -0,0 +1,13 @@
+package com.github.sasergeev.restclient;
+
+/**
+ * Handle of started request(s) which can be cancelled
+ */
+public interface Cancellable {
+    /**
+     * Abort request: close connection, stop reading response and drop all callbacks not delivered yet
+     */
+    void cancel();
+
+    boolean isCancelled();
+}
@@ -0,0 +1,238 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host circuit breaker. Outcomes of last calls to host are kept in sliding window, when rate of failed
+ * (I/O error or 5xx) or slow calls exceeds threshold the circuit is opened and calls fail at once
+ * with {@link OpenException} instead of waiting for timeout. After open duration some trial calls are let through
+ * in half-open state, their success closes the circuit again.
+ */
+public final class CircuitBreaker {
+    private static final String CANCELED = "Canceled";
+    private static volatile CircuitBreaker installed;
+
+    /**
+     * Application interceptor of engine's client, does nothing until breaker is installed or for warm-up requests
+     */
+    static final Interceptor INTERCEPTOR = chain -> {
+        CircuitBreaker circuitBreaker = installed;
+        if (circuitBreaker == null || chain.request().tag() == RestEngine.WARM_UP)
+            return chain.proceed(chain.request());
+        return circuitBreaker.intercept(chain);
+    };
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSize            count of last calls to host to compute rates
+     * @param minimumCalls          count of calls in window before circuit can be opened
+     * @param failureRateThreshold  rate of failed calls from 0 to 1 to open circuit
+     * @param slowCallRateThreshold rate of slow calls from 0 to 1 to open circuit
+     * @param slowCallDuration      call is slow if response is not received for this time
+     * @param openDuration          time while calls are rejected before trial calls
+     * @param halfOpenCalls         count of trial calls in half-open state
+     */
+    public CircuitBreaker(int windowSize,
+                          int minimumCalls,
+                          float failureRateThreshold,
+                          float slowCallRateThreshold,
+                          long slowCallDuration,
+                          long openDuration,
+                          TimeUnit unit,
+                          int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize)
+            throw new IllegalArgumentException("Wrong window: " + minimumCalls + " of " + windowSize);
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1 || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1)
+            throw new IllegalArgumentException("Rate thresholds must be in (0, 1]");
+        if (halfOpenCalls < 1)
+            throw new IllegalArgumentException("halfOpenCalls < 1: " + halfOpenCalls);
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+        this.openDurationNanos = unit.toNanos(openDuration);
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Breaker with window of 20 calls, opened by 50% of failed or 80% of calls slower than 10 s for 30 s
+     */
+    public static CircuitBreaker createDefault() {
+        return new CircuitBreaker(20, 10, 0.5f, 0.8f, 10, 30, TimeUnit.SECONDS, 3);
+    }
+
+    /**
+     * Use breaker for requests of all engines, null to remove it
+     */
+    public static void install(CircuitBreaker circuitBreaker) {
+        installed = circuitBreaker;
+    }
+
+    public static CircuitBreaker getInstalled() {
+        return installed;
+    }
+
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host.toLowerCase());
+        return circuit != null ? circuit.currentState() : State.CLOSED;
+    }
+
+    /**
+     * Close circuits of all hosts and forget their calls
+     */
+    public void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * Only responses from network are counted: cache hits and synthetic 504 of only-if-cached requests are not,
+     * cancelled and expired calls are neither
+     */
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.cacheControl().onlyIfCached())
+            return chain.proceed(request);
+        String host = request.httpUrl().host().toLowerCase();
+        Circuit circuit = circuits.computeIfAbsent(host, key -> new Circuit());
+        if (!circuit.tryAcquire())
+            throw new OpenException(host);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            if (isAborted(request, e))
+                circuit.release();
+            else
+                circuit.record(true, System.nanoTime() - start > slowCallDurationNanos);
+            throw e;
+        } catch (RuntimeException e) {
+            circuit.record(true, System.nanoTime() - start > slowCallDurationNanos);
+            throw e;
+        }
+        if (response.networkResponse() == null)
+            circuit.release();
+        else
+            circuit.record(response.code() >= 500, System.nanoTime() - start > slowCallDurationNanos);
+        return response;
+    }
+
+    private static boolean isAborted(Request request, IOException e) {
+        if (request.tag() instanceof RestCall) {
+            RestCall call = (RestCall) request.tag();
+            if (call.isCancelled() || call.isExpired())
+                return true;
+        }
+        return CANCELED.equals(e.getMessage()) || RestCall.DEADLINE_EXCEEDED.equals(e.getMessage());
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Call is rejected because circuit of host is open
+     */
+    public static final class OpenException extends IOException {
+        OpenException(String host) {
+            super("Circuit breaker is open for " + host);
+        }
+    }
+
+    private final class Circuit {
+        private final boolean[] failures = new boolean[windowSize];
+        private final boolean[] slowCalls = new boolean[windowSize];
+        private State state = State.CLOSED;
+        private int position;
+        private int count;
+        private int failureCount;
+        private int slowCount;
+        private long openedAt;
+        private int trialCalls;
+        private int trialSuccesses;
+
+        private synchronized State currentState() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos)
+                transition(State.HALF_OPEN);
+            return state;
+        }
+
+        private synchronized boolean tryAcquire() {
+            switch (currentState()) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (trialCalls >= halfOpenCalls)
+                        return false;
+                    trialCalls++;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Call without network outcome is not counted, its trial permit is returned
+         */
+        private synchronized void release() {
+            if (state == State.HALF_OPEN && trialCalls > 0)
+                trialCalls--;
+        }
+
+        private synchronized void record(boolean failure, boolean slow) {
+            if (state == State.HALF_OPEN) {
+                if (failure || slow) {
+                    transition(State.OPEN);
+                } else if (++trialSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN)
+                return;
+            if (count == windowSize) {
+                failureCount -= failures[position] ? 1 : 0;
+                slowCount -= slowCalls[position] ? 1 : 0;
+            } else {
+                count++;
+            }
+            failures[position] = failure;
+            slowCalls[position] = slow;
+            failureCount += failure ? 1 : 0;
+            slowCount += slow ? 1 : 0;
+            position = (position + 1) % windowSize;
+            if (count >= minimumCalls && (failureCount >= failureRateThreshold * count || slowCount >= slowCallRateThreshold * count))
+                transition(State.OPEN);
+        }
+
+        private void transition(State state) {
+            this.state = state;
+            trialCalls = 0;
+            trialSuccesses = 0;
+            if (state == State.OPEN) {
+                openedAt = System.nanoTime();
+            } else if (state == State.CLOSED) {
+                position = 0;
+                count = 0;
+                failureCount = 0;
+                slowCount = 0;
+            }
+        }
+    }
+}
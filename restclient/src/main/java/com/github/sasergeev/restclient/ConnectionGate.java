@@ -0,0 +1,174 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Application interceptor letting only one request to host open connection while the others wait for it,
+ * so with HTTP/2 all of them are multiplexed over that connection instead of racing to open own ones.
+ * Gate of host is opened by network interceptor as soon as connection is established or when opening request ends,
+ * and it is closed again when that connection is lost. Hosts answering with HTTP/1.1 are not gated,
+ * their connections can't be shared anyway. Waiting requests are queued and woken up by the gate instead of polling,
+ * a waiting request gives up as soon as its call is cancelled or expired.
+ */
+final class ConnectionGate implements Interceptor {
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Network interceptor of the same client, remembers connection of host and opens its gate
+     */
+    final Interceptor probe = chain -> {
+        Host host = hosts.get(address(chain.request().httpUrl()));
+        if (host != null && chain.connection() != null)
+            host.connected(chain.connection());
+        return chain.proceed(chain.request());
+    };
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Host host = hosts.computeIfAbsent(address(request.httpUrl()), key -> new Host());
+        Object token = host.enter(request.tag());
+        if (token == null)
+            return chain.proceed(request);
+        try {
+            return chain.proceed(request);
+        } finally {
+            host.leave(token);
+        }
+    }
+
+    /**
+     * Protocol of last connection to host or null if it is not connected yet
+     */
+    Protocol getProtocol(HttpUrl url) {
+        Host host = hosts.get(address(url));
+        return host != null ? host.getProtocol() : null;
+    }
+
+    private static String address(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+
+    private static final class Host {
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private Connection connection;
+        private Protocol protocol;
+        private Object opener;
+
+        /**
+         * Wait in queue while other request opens connection. Token is returned if this request has to open it,
+         * null if it can go on: shared connection is alive or host is not gated.
+         */
+        Object enter(Object tag) throws IOException {
+            RestCall call = tag instanceof RestCall ? (RestCall) tag : null;
+            while (true) {
+                Waiter waiter;
+                synchronized (this) {
+                    if (protocol == Protocol.HTTP_1_1 || protocol == Protocol.HTTP_1_0)
+                        return null;
+                    if (connection != null && !connection.getSocket().isClosed())
+                        return null;
+                    connection = null;
+                    if (opener == null) {
+                        opener = new Object();
+                        return opener;
+                    }
+                    waiter = new Waiter();
+                    waiters.add(waiter);
+                }
+                if (call != null)
+                    call.whenAborted(() -> abandon(waiter));
+                Object token;
+                try {
+                    token = waiter.await();
+                } catch (InterruptedException e) {
+                    abandon(waiter);
+                    leave(waiter.getToken());
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for connection");
+                }
+                if (call != null && (call.isCancelled() || call.isExpired())) {
+                    leave(token);
+                    throw new IOException(call.isCancelled() ? "Canceled" : RestCall.DEADLINE_EXCEEDED);
+                }
+                if (token != null)
+                    return token;
+            }
+        }
+
+        synchronized void connected(Connection connection) {
+            this.connection = connection;
+            this.protocol = connection.getProtocol();
+            opener = null;
+            for (Waiter waiter : waiters) {
+                waiter.signal(null);
+            }
+            waiters.clear();
+        }
+
+        /**
+         * Opening request ended, if it didn't connect the first waiting request tries
+         */
+        synchronized void leave(Object token) {
+            if (token == null || opener != token)
+                return;
+            Waiter next = waiters.poll();
+            opener = next != null ? new Object() : null;
+            if (next != null)
+                next.signal(opener);
+        }
+
+        /**
+         * Waiting request is cancelled or expired, it leaves queue and wakes up
+         */
+        private void abandon(Waiter waiter) {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+            waiter.signal(null);
+        }
+
+        synchronized Protocol getProtocol() {
+            return protocol;
+        }
+    }
+
+    /**
+     * Request waiting for connection, it is woken up once with token of opener or null
+     */
+    private static final class Waiter {
+        private boolean signalled;
+        private Object token;
+
+        synchronized void signal(Object token) {
+            if (signalled)
+                return;
+            signalled = true;
+            this.token = token;
+            notifyAll();
+        }
+
+        synchronized Object await() throws InterruptedException {
+            while (!signalled) {
+                wait();
+            }
+            return token;
+        }
+
+        synchronized Object getToken() {
+            return token;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Dns;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DNS results kept in file for TTL, so first requests after restart of process do not wait for lookup.
+ * Expired result is kept for 6 hours and used only if lookup fails, e.g. without network. Result of host is dropped when connection
+ * to it can't be opened, so next request looks it up again. Changes are written to file in background
+ * in one batch a second after the first of them.
+ */
+final class DnsCache implements Dns, Interceptor {
+    private static final int MAX_ENTRIES = 128;
+    private static final long SAVE_DELAY_MILLIS = 1000;
+    private static final long MAX_STALE_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    private final File file;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ThreadLocal<boolean[]> connected = new ThreadLocal<>();
+    private boolean loaded;
+    private boolean saveScheduled;
+
+    /**
+     * Network interceptor of the same client, marks request of current thread as connected
+     */
+    final Interceptor probe = chain -> {
+        boolean[] flag = connected.get();
+        if (flag != null)
+            flag[0] = true;
+        return chain.proceed(chain.request());
+    };
+
+    DnsCache(File file, long ttlMillis) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry;
+        synchronized (this) {
+            load();
+            entry = entries.get(hostname);
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiresAt > now)
+            return entry.addresses;
+        List<InetAddress> addresses;
+        try {
+            addresses = Dns.SYSTEM.lookup(hostname);
+        } catch (UnknownHostException e) {
+            if (entry != null)
+                return entry.addresses;
+            throw e;
+        }
+        synchronized (this) {
+            entries.put(hostname, new Entry(Collections.unmodifiableList(new ArrayList<>(addresses)), now + ttlMillis));
+            evict(now);
+            scheduleSave();
+        }
+        return addresses;
+    }
+
+    /**
+     * Drop result of host if request failed before connection was opened, its addresses may be stale
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        boolean[] outer = connected.get();
+        boolean[] flag = new boolean[1];
+        connected.set(flag);
+        try {
+            return chain.proceed(chain.request());
+        } catch (ConnectException | NoRouteToHostException | SocketTimeoutException e) {
+            if (!flag[0])
+                invalidate(chain.request().httpUrl().host());
+            throw e;
+        } finally {
+            connected.set(outer);
+        }
+    }
+
+    synchronized void invalidate(String hostname) {
+        load();
+        if (entries.remove(hostname) != null)
+            scheduleSave();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt + MAX_STALE_MILLIS < now);
+        while (entries.size() > MAX_ENTRIES) {
+            String oldest = null;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (oldest == null || entry.getValue().expiresAt < entries.get(oldest).expiresAt)
+                    oldest = entry.getKey();
+            }
+            entries.remove(oldest);
+        }
+    }
+
+    /**
+     * Read file once, line is host, expiration time and addresses separated by tabs
+     */
+    private void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3)
+                    continue;
+                List<InetAddress> addresses = new ArrayList<>();
+                for (int i = 2; i < fields.length; i++) {
+                    addresses.add(InetAddress.getByAddress(fields[0], InetAddress.getByName(fields[i]).getAddress()));
+                }
+                entries.put(fields[0], new Entry(Collections.unmodifiableList(addresses), Long.parseLong(fields[1])));
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled)
+            return;
+        saveScheduled = true;
+        RestTimer.schedule(() -> CompletableFuture.runAsync(this::save), SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write snapshot of entries taken without holding lookups, writes of one file don't overlap
+     */
+    void save() {
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            saveScheduled = false;
+            snapshot = new HashMap<>(entries);
+        }
+        synchronized (file) {
+            write(snapshot);
+        }
+    }
+
+    private void write(Map<String, Entry> snapshot) {
+        File temp = new File(file.getPath() + ".tmp");
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            return;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue().expiresAt));
+                for (InetAddress address : entry.getValue().addresses) {
+                    writer.write('\t');
+                    writer.write(address.getHostAddress());
+                }
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file))
+            temp.delete();
+    }
+
+    private static final class Entry {
+        private final List<InetAddress> addresses;
+        private final long expiresAt;
+
+        private Entry(List<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
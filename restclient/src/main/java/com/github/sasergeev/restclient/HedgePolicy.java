@@ -0,0 +1,104 @@
+package com.github.sasergeev.restclient;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedging of GET-requests: if response is not received after delay, second identical request is sent,
+ * first response wins and the other request is cancelled. Delay is fixed or taken from observed percentile of latency.
+ * Each request adds part of token to budget of policy and each hedge takes whole one, so extra load is limited by ratio.
+ */
+public final class HedgePolicy {
+    private static final int SAMPLES = 128;
+    private static final int MIN_SAMPLES = 20;
+    private static volatile HedgePolicy defaultPolicy;
+
+    private final long delayMillis;
+    private final double percentile;
+    private final double ratio;
+    private final int maxTokens;
+    private final long[] latencies = new long[SAMPLES];
+    private int position;
+    private int count;
+    private double tokens;
+
+    /**
+     * @param delay    time to wait for response before hedge
+     * @param maxRatio share of requests which can be hedged
+     */
+    public HedgePolicy(long delay, TimeUnit unit, double maxRatio) {
+        this(unit.toMillis(delay), 0, maxRatio);
+    }
+
+    private HedgePolicy(long delayMillis, double percentile, double ratio) {
+        if (delayMillis < 0)
+            throw new IllegalArgumentException("delay < 0: " + delayMillis);
+        if (ratio <= 0 || ratio > 1)
+            throw new IllegalArgumentException("maxRatio must be in (0, 1]: " + ratio);
+        this.delayMillis = delayMillis;
+        this.percentile = percentile;
+        this.ratio = ratio;
+        this.maxTokens = Math.max(1, (int) Math.ceil(ratio * 10));
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Hedge after observed percentile of latency of requests with this policy, e.g. 0.95,
+     * initial delay is used until enough responses are observed and as lower bound of delay
+     */
+    public static HedgePolicy observed(double percentile, long initialDelay, TimeUnit unit, double maxRatio) {
+        if (percentile <= 0 || percentile >= 1)
+            throw new IllegalArgumentException("percentile must be in (0, 1): " + percentile);
+        return new HedgePolicy(unit.toMillis(initialDelay), percentile, maxRatio);
+    }
+
+    /**
+     * Policy used by clients with hedging enabled if other one is not set: hedge after p95 of latency, at most 5% of requests
+     */
+    public static HedgePolicy getDefault() {
+        if (defaultPolicy == null) {
+            synchronized (HedgePolicy.class) {
+                if (defaultPolicy == null)
+                    defaultPolicy = observed(0.95, 300, TimeUnit.MILLISECONDS, 0.05);
+            }
+        }
+        return defaultPolicy;
+    }
+
+    public static void setDefault(HedgePolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Count new request in hedge budget and return delay before hedge in millis
+     */
+    synchronized long onRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+        if (percentile == 0 || count < MIN_SAMPLES)
+            return delayMillis;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return Math.max(delayMillis, sorted[(int) Math.min(count - 1, Math.floor(percentile * count))]);
+    }
+
+    /**
+     * Take token for hedge, false if budget is exhausted
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1)
+            return false;
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Record latency of winning response
+     */
+    synchronized void record(long latencyMillis) {
+        if (percentile == 0)
+            return;
+        latencies[position] = latencyMillis;
+        position = (position + 1) % SAMPLES;
+        count = Math.min(SAMPLES, count + 1);
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Call;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Enqueued request with hedge: second attempt is enqueued after delay of policy, first response or HTTP error wins
+ * and cancels the other attempt. Network error of one attempt waits for the other one.
+ */
+final class HedgedExchange<S> {
+    private final RestCall call;
+    private final HedgePolicy policy;
+    private final Function<AsyncExchange.ExchangeCallback<S>, Call> enqueue;
+    private final AsyncExchange.ExchangeCallback<S> callback;
+    private final long start = System.nanoTime();
+    private final Call[] attempts = new Call[2];
+    private ScheduledFuture<?> hedge;
+    private int pending;
+    private int winner = -1;
+
+    private HedgedExchange(RestCall call,
+                           HedgePolicy policy,
+                           Function<AsyncExchange.ExchangeCallback<S>, Call> enqueue,
+                           AsyncExchange.ExchangeCallback<S> callback) {
+        this.call = call;
+        this.policy = policy;
+        this.enqueue = enqueue;
+        this.callback = callback;
+    }
+
+    static <S> void start(RestCall call,
+                          HedgePolicy policy,
+                          Function<AsyncExchange.ExchangeCallback<S>, Call> enqueue,
+                          AsyncExchange.ExchangeCallback<S> callback) {
+        HedgedExchange<S> exchange = new HedgedExchange<>(call, policy, enqueue, callback);
+        long delay = policy.onRequest();
+        synchronized (exchange) {
+            exchange.pending = 1;
+            exchange.hedge = RestTimer.schedule(exchange::hedge, delay, TimeUnit.MILLISECONDS);
+        }
+        exchange.attempt(0);
+    }
+
+    private void attempt(int index) {
+        AsyncExchange.ExchangeCallback<S> attemptCallback = new AsyncExchange.ExchangeCallback<S>() {
+            @Override
+            public void onResponse(ResponseEntity<S> responseEntity) {
+                if (!complete(index))
+                    return;
+                policy.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                callback.onResponse(responseEntity);
+            }
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                boolean last;
+                synchronized (HedgedExchange.this) {
+                    last = --pending == 0;
+                }
+                if ((last || exception instanceof HttpStatusCodeException) && complete(index))
+                    callback.onFailure(exception);
+            }
+        };
+        Call attempt = call.bind(() -> enqueue.apply(attemptCallback));
+        boolean lost;
+        synchronized (this) {
+            attempts[index] = attempt;
+            lost = winner != -1 && winner != index;
+        }
+        if (lost && attempt != null)
+            attempt.cancel();
+        else
+            call.attach(attempt);
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            if (winner != -1 || call.isCancelled() || call.isExpired() || pending == 0 || !policy.tryHedge())
+                return;
+            pending++;
+        }
+        attempt(1);
+    }
+
+    /**
+     * Mark exchange as completed by attempt, cancel the other one and hedge timer
+     */
+    private boolean complete(int index) {
+        Call loser;
+        synchronized (this) {
+            if (winner != -1)
+                return false;
+            winner = index;
+            loser = attempts[1 - index];
+        }
+        hedge.cancel(false);
+        if (loser != null)
+            loser.cancel();
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Call;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClientException;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable request compiled once by {@link RestClientBuilder#prepare(HttpMethod)}: method, parsed URI template,
+ * frozen headers with resolved Accept, response type and engine. Each call only binds params into URI template,
+ * its headers are sent as they are without copying.
+ */
+public final class PreparedRequest<T> {
+    private final HttpMethod httpMethod;
+    private final UrlTemplate urlTemplate;
+    private final HttpHeaders httpHeaders;
+    private final HttpEntity<?> httpEntity;
+    private final Class<T> responseType;
+    private final RestEngine restEngine;
+
+    /**
+     * Headers are copied, so later changes of builder don't affect request, and Accept is resolved from converters once
+     */
+    PreparedRequest(HttpMethod httpMethod, String url, HttpHeaders httpHeaders, Class<T> responseType, RestEngine restEngine) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(httpHeaders);
+        if (!headers.containsKey(HttpHeaders.ACCEPT))
+            headers.setAccept(AsyncExchange.acceptableMediaTypes(restEngine.getMessageConverters(), responseType));
+        this.httpMethod = httpMethod;
+        this.urlTemplate = UrlTemplate.parse(url);
+        this.httpHeaders = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.httpEntity = new HttpEntity<>(this.httpHeaders);
+        this.responseType = responseType;
+        this.restEngine = restEngine;
+    }
+
+    public HttpMethod getMethod() {
+        return httpMethod;
+    }
+
+    public String getUrl() {
+        return urlTemplate.getTemplate();
+    }
+
+    public List<String> getVariableNames() {
+        return urlTemplate.getVariableNames();
+    }
+
+    public Class<T> getResponseType() {
+        return responseType;
+    }
+
+    /**
+     * Expand URI template with params in order of variables
+     */
+    public URI expand(Object... params) {
+        return urlTemplate.expand(params);
+    }
+
+    /**
+     * Expand URI template with params by names of variables
+     */
+    public URI expand(Map<String, ?> params) {
+        return urlTemplate.expand(params);
+    }
+
+    /**
+     * Execute request in current thread, use {@link RestClientBuilder#build(PreparedRequest)} for asynchronous call
+     */
+    public ResponseEntity<T> execute(Object... params) throws RestClientException {
+        return restEngine.exchange(expand(params), httpMethod, httpEntity, responseType);
+    }
+
+    /**
+     * Execute request in current thread with params by names of variables
+     */
+    public ResponseEntity<T> execute(Map<String, ?> params) throws RestClientException {
+        return restEngine.exchange(expand(params), httpMethod, httpEntity, responseType);
+    }
+
+    Call enqueue(AsyncExchange.ExchangeCallback<T> callback, Object... params) {
+        return restEngine.enqueue(expand(params), httpMethod, httpEntity, responseType, callback);
+    }
+
+    HttpEntity<?> getEntity() {
+        return httpEntity;
+    }
+
+    HttpHeaders getHeaders() {
+        return httpHeaders;
+    }
+
+    RestEngine getEngine() {
+        return restEngine;
+    }
+}
@@ -0,0 +1,380 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests made within short window are packed into one multipart/mixed request to batch endpoint,
+ * each part is application/http message with Content-ID. Parts of response are matched by Content-ID
+ * (or by order) and delivered to callers as if they were separate requests.
+ * Batch request is bound to all its calls: expired call fails at once and the request is cancelled
+ * when none of its calls waits for it anymore.
+ */
+public final class RestBatch {
+    private static final String CONTENT_ID = "Content-ID";
+    private static final String RESPONSE_PREFIX = "response-";
+    private static final String CRLF = "\r\n";
+
+    private final RestEngine restEngine;
+    private final String endpoint;
+    private final long windowMillis;
+    private final int maxSize;
+    private List<Part<?>> parts = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param endpoint URL of batch endpoint
+     * @param window   time to collect requests after the first one
+     * @param maxSize  count of requests which are sent at once without waiting for window
+     */
+    public RestBatch(String endpoint, long window, TimeUnit unit, int maxSize) {
+        this(RestEngine.getDefault(), endpoint, window, unit, maxSize);
+    }
+
+    public RestBatch(RestEngine restEngine, String endpoint, long window, TimeUnit unit, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize < 1: " + maxSize);
+        this.restEngine = restEngine;
+        this.endpoint = endpoint;
+        this.windowMillis = unit.toMillis(window);
+        this.maxSize = maxSize;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Send collected requests now
+     */
+    public void flush() {
+        List<Part<?>> batch;
+        synchronized (this) {
+            batch = takeParts();
+        }
+        send(batch);
+    }
+
+    <S> void add(RestCall call,
+                 HttpMethod httpMethod,
+                 URI uri,
+                 HttpEntity<?> httpEntity,
+                 Class<S> responseType,
+                 AsyncExchange.ExchangeCallback<S> callback) {
+        List<Part<?>> batch = null;
+        synchronized (this) {
+            parts.add(new Part<>(call, httpMethod, uri, httpEntity, responseType, callback));
+            if (parts.size() >= maxSize)
+                batch = takeParts();
+            else if (scheduledFlush == null)
+                scheduledFlush = RestTimer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        if (batch != null)
+            send(batch);
+    }
+
+    private List<Part<?>> takeParts() {
+        List<Part<?>> batch = parts;
+        parts = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(List<Part<?>> batch) {
+        for (Iterator<Part<?>> iterator = batch.iterator(); iterator.hasNext(); ) {
+            Part<?> part = iterator.next();
+            if (part.call.isCancelled() || part.call.isExpired()) {
+                iterator.remove();
+                if (!part.call.isCancelled())
+                    part.callback.onFailure(ioError(RestCall.DEADLINE_EXCEEDED, null));
+            }
+        }
+        if (batch.isEmpty())
+            return;
+        if (batch.size() == 1) {
+            batch.get(0).enqueue(restEngine);
+            return;
+        }
+        List<HttpMessageConverter<?>> messageConverters = restEngine.getMessageConverters();
+        String boundary = "batch_" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Map<String, Part<?>> partsById = new ConcurrentHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Part<?> part = batch.get(i);
+            String id = String.valueOf(i + 1);
+            try {
+                byte[] message = part.message(messageConverters);
+                writeAscii(body, "--" + boundary + CRLF + HttpHeaders.CONTENT_TYPE + ": application/http" + CRLF
+                        + CONTENT_ID + ": <" + id + ">" + CRLF + CRLF);
+                body.write(message, 0, message.length);
+                writeAscii(body, CRLF);
+                partsById.put(id, part);
+            } catch (IOException | RuntimeException e) {
+                part.callback.onFailure(new RestClientException("Could not write request: " + e.getMessage(), e));
+            }
+        }
+        if (partsById.isEmpty())
+            return;
+        writeAscii(body, "--" + boundary + "--" + CRLF);
+        Request request = new Request.Builder()
+                .url(endpoint)
+                .post(RequestBody.create(com.squareup.okhttp.MediaType.parse("multipart/mixed; boundary=" + boundary), body.toByteArray()))
+                .build();
+        List<String> ids = new ArrayList<>(partsById.keySet());
+        ids.sort((first, second) -> Integer.compare(Integer.parseInt(first), Integer.parseInt(second)));
+        Call call = restEngine.getHttpClient().newCall(request);
+        for (Map.Entry<String, Part<?>> entry : partsById.entrySet()) {
+            entry.getValue().call.whenAborted(() -> abort(partsById, entry.getKey(), call));
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                fail(partsById, ioError(e.getMessage(), e));
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                try {
+                    byte[] bytes = response.body().bytes();
+                    HttpStatus httpStatus = HttpStatus.valueOf(response.code());
+                    String contentType = response.header(HttpHeaders.CONTENT_TYPE);
+                    if (!httpStatus.is2xxSuccessful()) {
+                        fail(partsById, AsyncExchange.statusError(httpStatus, response.message(), new HttpHeaders(), bytes));
+                    } else if (contentType == null || !contentType.toLowerCase().startsWith("multipart/mixed")) {
+                        fail(partsById, new RestClientException("Batch response is not multipart/mixed: " + contentType));
+                    } else {
+                        deliver(ids, partsById, MediaType.parseMediaType(contentType).getParameter("boundary"), bytes, messageConverters);
+                    }
+                } catch (IOException e) {
+                    fail(partsById, ioError(e.getMessage(), e));
+                } catch (RuntimeException e) {
+                    fail(partsById, new RestClientException("Could not read batch response: " + e.getMessage(), e));
+                }
+            }
+        });
+    }
+
+    /**
+     * Call of part is cancelled or expired: expired one fails at once, batch request is cancelled after the last part
+     */
+    private void abort(Map<String, Part<?>> partsById, String id, Call call) {
+        Part<?> part = partsById.remove(id);
+        if (part == null)
+            return;
+        if (!part.call.isCancelled())
+            part.callback.onFailure(ioError(RestCall.DEADLINE_EXCEEDED, null));
+        if (partsById.isEmpty())
+            call.cancel();
+    }
+
+    private ResourceAccessException ioError(String message, IOException e) {
+        return new ResourceAccessException("I/O error on batch request for \"" + endpoint + "\": " + message, e);
+    }
+
+    /**
+     * Parts of response are matched with ids of sent parts, parts of calls aborted meanwhile are skipped
+     */
+    private static void deliver(List<String> ids, Map<String, Part<?>> partsById, String boundary, byte[] bytes, List<HttpMessageConverter<?>> messageConverters) {
+        if (boundary == null)
+            throw new IllegalArgumentException("No boundary in batch response");
+        String body = new String(bytes, StandardCharsets.ISO_8859_1);
+        String delimiter = "--" + unquote(boundary);
+        int index = 0;
+        int start = body.indexOf(delimiter);
+        while (start != -1) {
+            start += delimiter.length();
+            if (body.startsWith("--", start))
+                break;
+            int end = body.indexOf(delimiter, start);
+            if (end == -1)
+                break;
+            String text = body.substring(start, end);
+            Map<String, String> partHeaders = new HashMap<>();
+            int messageStart = parseHeaders(text, skipLineBreak(text, 0), partHeaders::put);
+            String id = partHeaders.get(CONTENT_ID.toLowerCase());
+            id = id != null ? unquote(id.replace("<", "").replace(">", "").trim()) : null;
+            if (id != null && id.startsWith(RESPONSE_PREFIX))
+                id = id.substring(RESPONSE_PREFIX.length());
+            if (id == null || !ids.contains(id))
+                id = index < ids.size() ? ids.get(index) : null;
+            index++;
+            Part<?> part = id != null ? partsById.remove(id) : null;
+            if (part != null)
+                part.deliver(trimLineBreak(text.substring(messageStart)), messageConverters);
+            start = end;
+        }
+        fail(partsById, new RestClientException("No response for request in batch"));
+    }
+
+    private static void fail(Map<String, Part<?>> partsById, RestClientException exception) {
+        for (String id : new ArrayList<>(partsById.keySet())) {
+            Part<?> part = partsById.remove(id);
+            if (part != null)
+                part.callback.onFailure(exception);
+        }
+    }
+
+    /**
+     * Parse header lines from position up to empty line, return position of body
+     */
+    private static int parseHeaders(String text, int position, HeaderConsumer consumer) {
+        while (position < text.length()) {
+            int end = text.indexOf('\n', position);
+            if (end == -1)
+                end = text.length();
+            String line = text.substring(position, end).trim();
+            position = Math.min(end + 1, text.length());
+            if (line.isEmpty())
+                break;
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                consumer.accept(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        return position;
+    }
+
+    private static int skipLineBreak(String text, int position) {
+        if (text.startsWith(CRLF, position))
+            return position + 2;
+        return text.startsWith("\n", position) ? position + 1 : position;
+    }
+
+    private static String trimLineBreak(String text) {
+        if (text.endsWith(CRLF))
+            return text.substring(0, text.length() - 2);
+        return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static String unquote(String value) {
+        return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private interface HeaderConsumer {
+        void accept(String name, String value);
+    }
+
+    private static final class Part<S> {
+        private final RestCall call;
+        private final HttpMethod httpMethod;
+        private final URI uri;
+        private final HttpEntity<?> httpEntity;
+        private final Class<S> responseType;
+        private final AsyncExchange.ExchangeCallback<S> callback;
+
+        private Part(RestCall call,
+                     HttpMethod httpMethod,
+                     URI uri,
+                     HttpEntity<?> httpEntity,
+                     Class<S> responseType,
+                     AsyncExchange.ExchangeCallback<S> callback) {
+            this.call = call;
+            this.httpMethod = httpMethod;
+            this.uri = uri;
+            this.httpEntity = httpEntity;
+            this.responseType = responseType;
+            this.callback = callback;
+        }
+
+        /**
+         * Single request is sent as it is on behalf of its call
+         */
+        private void enqueue(RestEngine restEngine) {
+            call.attach(call.bind(() -> restEngine.enqueue(uri, httpMethod, httpEntity, responseType, callback)));
+        }
+
+        /**
+         * Request as application/http message: request line, headers and body
+         */
+        private byte[] message(List<HttpMessageConverter<?>> messageConverters) throws IOException {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(httpEntity.getHeaders());
+            if (headers.getAccept().isEmpty())
+                headers.setAccept(AsyncExchange.acceptableMediaTypes(messageConverters, responseType));
+            byte[] body = AsyncExchange.write(messageConverters, httpEntity, headers);
+            String target = uri.getRawPath() != null && !uri.getRawPath().isEmpty() ? uri.getRawPath() : "/";
+            if (uri.getRawQuery() != null)
+                target += "?" + uri.getRawQuery();
+            StringBuilder head = new StringBuilder(httpMethod.name()).append(' ').append(target).append(" HTTP/1.1").append(CRLF);
+            if (uri.getHost() != null)
+                head.append("Host: ").append(uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost()).append(CRLF);
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                for (String value : entry.getValue()) {
+                    head.append(entry.getKey()).append(": ").append(value).append(CRLF);
+                }
+            }
+            if (body != null)
+                head.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(body.length).append(CRLF);
+            head.append(CRLF);
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+            message.write(headBytes, 0, headBytes.length);
+            if (body != null)
+                message.write(body, 0, body.length);
+            return message.toByteArray();
+        }
+
+        /**
+         * Deliver application/http response message to callback
+         */
+        private void deliver(String message, List<HttpMessageConverter<?>> messageConverters) {
+            ResponseEntity<S> responseEntity;
+            try {
+                int lineEnd = message.indexOf('\n');
+                String[] statusLine = message.substring(0, lineEnd == -1 ? message.length() : lineEnd).trim().split(" ", 3);
+                HttpStatus httpStatus = HttpStatus.valueOf(Integer.parseInt(statusLine[1]));
+                HttpHeaders headers = new HttpHeaders();
+                int bodyStart = lineEnd == -1 ? message.length() : parseHeaders(message, lineEnd + 1, headers::add);
+                byte[] body = message.substring(bodyStart).getBytes(StandardCharsets.ISO_8859_1);
+                if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError()) {
+                    callback.onFailure(AsyncExchange.statusError(httpStatus, statusLine.length > 2 ? statusLine[2] : httpStatus.getReasonPhrase(), headers, body));
+                    return;
+                }
+                S object = AsyncExchange.read(messageConverters, responseType, headers, new ByteArrayInputStream(body), body.length);
+                responseEntity = new ResponseEntity<>(object, headers, httpStatus);
+            } catch (RestClientException e) {
+                callback.onFailure(e);
+                return;
+            } catch (IOException | RuntimeException e) {
+                callback.onFailure(new RestClientException("Could not read response: " + e.getMessage(), e));
+                return;
+            }
+            callback.onResponse(responseEntity);
+        }
+    }
+}
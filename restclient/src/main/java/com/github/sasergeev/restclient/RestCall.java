@@ -0,0 +1,228 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One started request. Cancelling it cancels its OkHttp calls, blocking or enqueued ones,
+ * stops copy loop of download and removes callbacks already posted to main thread.
+ */
+public final class RestCall implements Cancellable {
+    private static final ThreadLocal<RestCall> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Header with remaining time budget of call in milliseconds, so server can give up on request nobody waits for
+     */
+    static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    /**
+     * Message of I/O error of attempt made after deadline of call
+     */
+    static final String DEADLINE_EXCEEDED = "Deadline exceeded";
+
+    /**
+     * Application interceptor of engine's client, sends remaining time of call with deadline in every attempt
+     * and fails attempt at once if deadline has already passed. Call is taken from tag of request.
+     */
+    static final Interceptor DEADLINE_INTERCEPTOR = chain -> {
+        Request request = chain.request();
+        RestCall call = request.tag() instanceof RestCall ? (RestCall) request.tag() : null;
+        if (call == null || !call.hasDeadline)
+            return chain.proceed(request);
+        long remaining = TimeUnit.NANOSECONDS.toMillis(call.deadline - System.nanoTime());
+        if (remaining <= 0)
+            throw new IOException(DEADLINE_EXCEEDED);
+        return chain.proceed(request.newBuilder()
+                .header(TIMEOUT_HEADER, String.valueOf(remaining))
+                .build());
+    };
+
+    private final Handler handler;
+    private final Executor executor;
+    private final List<Runnable> finishListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> aborts = new ArrayList<>();
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+    private volatile boolean hasDeadline;
+    private volatile long deadline;
+    private boolean finished;
+
+    RestCall(Handler handler) {
+        this.handler = handler;
+        this.executor = null;
+    }
+
+    /**
+     * Call delivering callbacks by executor instead of main thread, e.g. in unit tests without looper
+     */
+    RestCall(Executor executor) {
+        this.handler = null;
+        this.executor = executor;
+    }
+
+    @Override
+    public void cancel() {
+        List<Runnable> calls;
+        synchronized (this) {
+            if (cancelled)
+                return;
+            cancelled = true;
+            calls = new ArrayList<>(aborts);
+        }
+        if (handler != null)
+            handler.removeCallbacksAndMessages(this);
+        for (Runnable abort : calls) {
+            abort.run();
+        }
+        finish();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Abort network exchange of call when deadline passes, unlike cancel error callback is still delivered
+     */
+    void expireAfter(long timeout, TimeUnit unit) {
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+        hasDeadline = true;
+        ScheduledFuture<?> timer = RestTimer.schedule(this::expire, timeout, unit);
+        whenFinished(() -> timer.cancel(false));
+    }
+
+    /**
+     * True if deadline of call has passed, it is not retried or hedged anymore
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    private void expire() {
+        List<Runnable> calls;
+        synchronized (this) {
+            if (cancelled || finished)
+                return;
+            expired = true;
+            calls = new ArrayList<>(aborts);
+        }
+        for (Runnable abort : calls) {
+            abort.run();
+        }
+    }
+
+    /**
+     * Run blocking exchange in current thread, skipped if call is cancelled while waiting in queue
+     */
+    void run(Runnable runnable) {
+        if (cancelled)
+            return;
+        CURRENT.set(this);
+        try {
+            runnable.run();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Call running exchange in current thread or null, its OkHttp calls are bound to it
+     */
+    static RestCall current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Start enqueued exchange in current thread on behalf of this call, so its OkHttp call is bound to it
+     */
+    <R> R bind(Supplier<R> start) {
+        RestCall previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return start.get();
+        } finally {
+            if (previous != null)
+                CURRENT.set(previous);
+            else
+                CURRENT.remove();
+        }
+    }
+
+    /**
+     * Post callback to main thread, it is dropped if call is cancelled before delivery
+     */
+    void post(Runnable runnable) {
+        if (cancelled)
+            return;
+        Runnable callback = () -> {
+            if (!cancelled)
+                runnable.run();
+        };
+        if (handler != null)
+            handler.postAtTime(callback, this, SystemClock.uptimeMillis());
+        else
+            executor.execute(callback);
+    }
+
+    /**
+     * Bind OkHttp call of exchange, several ones can be bound for retries and hedges
+     */
+    void attach(Call call) {
+        if (call != null)
+            whenAborted(call::cancel);
+    }
+
+    /**
+     * Listener run when call is cancelled or expires, e.g. to abort exchange shared with other calls
+     */
+    void whenAborted(Runnable abort) {
+        boolean aborted;
+        synchronized (this) {
+            aborted = cancelled || expired;
+            if (!aborted && !finished)
+                aborts.add(abort);
+        }
+        if (aborted)
+            abort.run();
+    }
+
+    /**
+     * Mark call as done, listeners are notified once
+     */
+    void finish() {
+        synchronized (this) {
+            if (finished)
+                return;
+            finished = true;
+            aborts.clear();
+        }
+        for (Runnable listener : finishListeners) {
+            listener.run();
+        }
+    }
+
+    void whenFinished(Runnable listener) {
+        boolean done;
+        synchronized (this) {
+            done = finished;
+            if (!done)
+                finishListeners.add(listener);
+        }
+        if (done)
+            listener.run();
+    }
+}
@@ -1,11 +1,10 @@
 package com.github.sasergeev.restclient;
 
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 
 import androidx.core.os.HandlerCompat;
+import androidx.lifecycle.LifecycleOwner;
 
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
@@ -16,38 +15,45 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.OkHttpClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClientException;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-public class RestClient<T extends Serializable> {
-    private final ExecutorService executorService;
-    private final RestTemplate restTemplate;
-    private final Message message;
+public class RestClient<T> implements Cancellable {
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private RestDispatcher dispatcher;
+    private RestEngine restEngine;
     private final Handler handler;
+    private final Set<RestCall> calls = ConcurrentHashMap.newKeySet();
+    private RestScope scope;
+    private RetryPolicy retryPolicy;
+    private boolean idempotencyKey;
+    private long deadlineNanos;
+    private volatile boolean cancelled;
     private String queryUrl;
     private OnSuccess<T> onSuccess;
     private OnError onError;
@@ -62,15 +68,14 @@ public class RestClient<T extends Serializable> {
     private BiConsumer<ByteArrayOutputStream, HttpHeaders> onLoad;
 
     private RestClient(Class<T> responseType) {
-        this.executorService = Executors.newCachedThreadPool();
-        this.restTemplate = new RestTemplate();
-        this.message = Message.obtain();
+        this.dispatcher = RestDispatcher.getDefault();
+        this.restEngine = RestEngine.getDefault();
         this.handler = HandlerCompat.createAsync(Looper.getMainLooper());
         this.httpHeaders = new HttpHeaders();
         this.responseType = responseType;
     }
 
-    public static <T extends Serializable> RestClient<T> build(Class<T> clazz) {
+    public static <T> RestClient<T> build(Class<T> clazz) {
         return new RestClient<>(clazz);
     }
 
@@ -131,6 +136,78 @@ public class RestClient<T extends Serializable> {
         return this;
     }
 
+    /**
+     * Own connect, read and write timeouts of requests instead of 120 s of engine, call it after ssl
+     */
+    public RestClient<T> timeouts(long connectTimeout, long readTimeout, long writeTimeout, TimeUnit unit) {
+        setTimeouts(connectTimeout, readTimeout, writeTimeout, unit);
+        return this;
+    }
+
+    /**
+     * Overall deadline of each request including retries, remaining time is sent in X-Request-Timeout header.
+     * When deadline passes request is aborted and error is delivered with 504.
+     */
+    public RestClient<T> deadline(long timeout, TimeUnit unit) {
+        setDeadline(timeout, unit);
+        return this;
+    }
+
+    /**
+     * Transport of requests, e.g. HTTP/2 with one multiplexed connection per host, call it after ssl
+     */
+    public RestClient<T> transport(RestEngine.Transport transport) {
+        setTransport(transport);
+        return this;
+    }
+
+    /**
+     * Retry failed requests of idempotent methods by default policy
+     */
+    public RestClient<T> retry() {
+        return retry(RetryPolicy.getDefault());
+    }
+
+    /**
+     * Retry failed requests of idempotent methods by own policy
+     */
+    public RestClient<T> retry(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Send Idempotency-Key header, so POST and PATCH requests are retried too
+     */
+    public RestClient<T> idempotencyKey(String key) {
+        this.httpHeaders.set(IDEMPOTENCY_KEY, key);
+        this.idempotencyKey = true;
+        return this;
+    }
+
+    /**
+     * Use this for run requests on own dispatcher instead of default one
+     */
+    public RestClient<T> dispatcher(RestDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Join requests of this client to scope, they are cancelled together with it
+     */
+    public RestClient<T> scope(RestScope scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    /**
+     * Cancel requests of this client when Activity or Fragment is destroyed
+     */
+    public RestClient<T> scope(LifecycleOwner owner) {
+        return scope(RestScope.of(owner));
+    }
+
     /**
      * Handle success result by request
      */
@@ -198,7 +275,7 @@ public class RestClient<T extends Serializable> {
     public RestClient<T> get(Object... params) {
         setMethod(HttpMethod.GET);
         setHttpHeaders(httpHeaders);
-        executeRequest(responseType, onSuccess, onError, params);
+        executeRequest(responseType, params);
         return this;
     }
 
@@ -209,7 +286,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.POST);
         this.httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -220,7 +297,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.POST);
         this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -231,7 +308,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.POST);
         this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -250,7 +327,7 @@ public class RestClient<T extends Serializable> {
         HttpHeaders textHeaders = new HttpHeaders();
         textHeaders.setContentType(new MediaType("application", "json", StandardCharsets.UTF_8));
         body.forEach((k, v) -> requestBody.add(k, new HttpEntity<>(v, textHeaders)));
-        executeRequest(requestBody, responseType, onSuccess, onError);
+        executeRequest(requestBody, responseType);
         return this;
     }
 
@@ -263,7 +340,7 @@ public class RestClient<T extends Serializable> {
         setHttpHeaders(httpHeaders);
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
         resources.forEach(resource -> Optional.ofNullable(resource).ifPresent(result -> body.add(key, result)));
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -274,7 +351,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.PUT);
         this.httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -285,7 +362,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.PUT);
         this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -296,7 +373,7 @@ public class RestClient<T extends Serializable> {
         setMethod(HttpMethod.PUT);
         this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
         setHttpHeaders(httpHeaders);
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -315,7 +392,7 @@ public class RestClient<T extends Serializable> {
         HttpHeaders textHeaders = new HttpHeaders();
         textHeaders.setContentType(new MediaType("application", "json", StandardCharsets.UTF_8));
         body.forEach((k, v) -> requestBody.add(k, new HttpEntity<>(v, textHeaders)));
-        executeRequest(requestBody, responseType, onSuccess, onError);
+        executeRequest(requestBody, responseType);
         return this;
     }
 
@@ -328,7 +405,7 @@ public class RestClient<T extends Serializable> {
         setHttpHeaders(httpHeaders);
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
         resources.forEach(resource -> Optional.ofNullable(resource).ifPresent(result -> body.add(key, result)));
-        executeRequest(body, responseType, onSuccess, onError, params);
+        executeRequest(body, responseType, params);
         return this;
     }
 
@@ -338,44 +415,55 @@ public class RestClient<T extends Serializable> {
     public RestClient<T> delete(Object... params) {
         setMethod(HttpMethod.DELETE);
         setHttpHeaders(httpHeaders);
-        executeRequest(responseType, onSuccess, onError, params);
+        executeRequest(responseType, params);
         return this;
     }
 
     /**
      * Download file with some params
      */
-    public void download(String filePath, Object... params) {
+    public RestCall download(String filePath, Object... params) {
         setHttpHeaders(httpHeaders);
-        executeRequest(filePath, onError, params);
+        return executeRequest(filePath, onError, params);
     }
 
     /**
      * Download file with some params
      */
-    public void load(Object... params) {
+    public RestCall load(Object... params) {
         setHttpHeaders(httpHeaders);
-        executeRequest(onError, params);
+        return executeRequest(onError, params);
     }
 
-    private ResponseEntity<Resource> execute(Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), HttpMethod.GET, new HttpEntity<>(buildHeaders()), Resource.class, params);
+    private ResponseEntity<Resource> execute(RestEngine engine, String url, HttpEntity<?> httpEntity, Object... params) {
+        return engine.exchange(url, HttpMethod.GET, httpEntity, Resource.class, params);
     }
 
     private String buildRequestUrl() {
         return this.queryUrl;
     }
 
-    private <S> ResponseEntity<S> execute(HttpMethod httpMethod, Class<S> responseType, Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), httpMethod, new HttpEntity<>(buildHeaders()), responseType, params);
-    }
-
-    private <S, V> ResponseEntity<S> execute(HttpMethod httpMethod, V request, Class<S> responseType, Object... params) {
-        return restTemplate.exchange(buildRequestUrl(), httpMethod, new HttpEntity<>(request, buildHeaders()), responseType, params);
+    /**
+     * Blocking exchange in current task of dispatcher, its outcome is passed to handler.
+     * With retry policy failed attempt is run again in new task after backoff.
+     */
+    private <S> void execute(RestCall call, RestEngine engine, String url, HttpMethod httpMethod, HttpEntity<?> httpEntity, Class<S> responseType,
+                             Consumer<Supplier<ResponseEntity<S>>> handler, Object... params) {
+        Supplier<ResponseEntity<S>> exchange = () -> engine.exchange(url, httpMethod, httpEntity, responseType, params);
+        RetryPolicy policy = retryPolicy;
+        if (policy == null || !RetryPolicy.isRetryable(httpMethod, idempotencyKey))
+            handler.accept(exchange);
+        else
+            policy.execute(dispatcher, url, RestDispatcher.Priority.NORMAL, call, exchange, handler);
     }
 
+    /**
+     * Copy of current headers, so next requests don't change headers of already queued one
+     */
     private HttpHeaders buildHeaders() {
-        return this.httpHeaders;
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(this.httpHeaders);
+        return headers;
     }
 
     protected void setHttpHeaders(HttpHeaders httpHeaders) {
@@ -406,86 +494,116 @@ public class RestClient<T extends Serializable> {
         this.onLoad = onLoad;
     }
 
-    protected void executeRequest(String filePath,
-                                  OnError onError,
-                                  Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
-            try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                process(execute(params), filePath, onError, onProgress, onDownload);
-            } catch (HttpClientErrorException | HttpServerErrorException e) {
-                Optional.ofNullable(onError).
-                        ifPresent(error -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
-            } catch (ResourceAccessException e) {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error(e.getMessage(), null, HttpStatus.SERVICE_UNAVAILABLE));
-            } finally {
-                Optional.ofNullable(after).ifPresent(handler::post);
-                executorService.shutdown();
-            }
-        });
-    }
-
-    protected void executeRequest(OnError onError,
-                                  Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
+    protected RestCall executeRequest(String filePath,
+                                      OnError onError,
+                                      Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, RestDispatcher.Priority.BACKGROUND, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
             try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                process(execute(params), onError, onLoad);
+                Optional.ofNullable(execute).ifPresent(call::post);
+                process(call, execute(engine, url, httpEntity, params), filePath, onError, onProgress, onDownload);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
-                Optional.ofNullable(onError).
-                        ifPresent(error -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode())));
             } catch (ResourceAccessException e) {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error(e.getMessage(), null, HttpStatus.SERVICE_UNAVAILABLE));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, networkStatus(call))));
+            } catch (RestClientException e) {
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR)));
             } finally {
-                Optional.ofNullable(after).ifPresent(handler::post);
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
     }
 
-    protected <S, V> void executeRequest(V body,
-                                         Class<S> responseType,
-                                         Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
-            ResponseEntity<?> responseEntity = null;
+    protected RestCall executeRequest(OnError onError,
+                                      Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, RestDispatcher.Priority.BACKGROUND, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
             try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                responseEntity = execute(httpMethod, body, responseType, params);
+                Optional.ofNullable(execute).ifPresent(call::post);
+                process(call, execute(engine, url, httpEntity, params), onError, onLoad);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode())));
             } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, networkStatus(call))));
+            } catch (RestClientException e) {
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR)));
             } finally {
-                Optional.ofNullable(responseEntity).ifPresent(this:: executeResponse);
-                handleMessage(message);
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
+    }
+
+    protected <V> RestCall executeRequest(V body,
+                                          Class<T> responseType,
+                                          Object... params) {
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpMethod method = httpMethod;
+        HttpEntity<?> httpEntity = new HttpEntity<>(body, buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
+            execute(call, engine, url, method, httpEntity, responseType, outcome -> {
+                RestResult<T> result = null;
+                try {
+                    Optional.ofNullable(execute).ifPresent(call::post);
+                    result = RestResult.of(outcome.get());
+                } catch (HttpClientErrorException | HttpServerErrorException e) {
+                    result = RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), e.getStatusCode());
+                } catch (ResourceAccessException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), networkStatus(call));
+                } catch (RestClientException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                } finally {
+                    handleResult(call, result);
+                }
+            }, params);
+        }));
+        return call;
     }
 
-    protected <S> void executeRequest(Class<S> responseType,
+    protected RestCall executeRequest(Class<T> responseType,
                                       Object... params) {
-        executorService.execute(() -> {
-            Optional.ofNullable(before).ifPresent(handler::post);
-            ResponseEntity<?> responseEntity = null;
-            try {
-                Optional.ofNullable(execute).ifPresent(handler::post);
-                responseEntity = execute(httpMethod, responseType, params);
-            } catch (HttpClientErrorException | HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-            } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
-            } finally {
-                Optional.ofNullable(responseEntity).ifPresent(this::executeResponse);
-                handleMessage(message);
-                executorService.shutdown();
-            }
-        });
+        String url = buildRequestUrl();
+        RestEngine engine = restEngine;
+        HttpMethod method = httpMethod;
+        HttpEntity<?> httpEntity = new HttpEntity<>(buildHeaders());
+        RestCall call = newCall();
+        dispatcher.execute(url, () -> call.run(() -> {
+            Optional.ofNullable(before).ifPresent(call::post);
+            execute(call, engine, url, method, httpEntity, responseType, outcome -> {
+                RestResult<T> result = null;
+                try {
+                    Optional.ofNullable(execute).ifPresent(call::post);
+                    result = RestResult.of(outcome.get());
+                } catch (HttpClientErrorException | HttpServerErrorException e) {
+                    result = RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), e.getStatusCode());
+                } catch (ResourceAccessException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), networkStatus(call));
+                } catch (RestClientException e) {
+                    result = RestResult.error(e.getMessage(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                } finally {
+                    handleResult(call, result);
+                }
+            }, params);
+        }));
+        return call;
     }
 
     protected void setMethod(HttpMethod httpMethod) {
@@ -493,39 +611,79 @@ public class RestClient<T extends Serializable> {
     }
 
     protected void setSsl(InputStream inputStream) {
-        this.restTemplate.setRequestFactory(new OkHttpClientHttpRequestFactory(SSLHttpClient.getInstance(inputStream)));
-    }
-
-    private void executeResponse(ResponseEntity<?> responseEntity) {
-        Bundle bundle = new Bundle();
-        message.setTarget(handler);
-        message.setData(bundle);
-        HttpStatus httpStatus = responseEntity.getStatusCode();
-        bundle.putInt("Status", httpStatus.value());
-        bundle.putSerializable("Headers", responseEntity.getHeaders());
-        if (httpStatus.is2xxSuccessful()) {
-            bundle.putSerializable("Object", (Serializable) responseEntity.getBody());
-        } else if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError()) {
-            bundle.putString("Message", (String) responseEntity.getBody());
-        }
+        this.restEngine = RestEngine.ssl(inputStream);
+    }
+
+    protected void setTimeouts(long connectTimeout, long readTimeout, long writeTimeout, TimeUnit unit) {
+        this.restEngine = restEngine.withTimeouts(connectTimeout, readTimeout, writeTimeout, unit);
+    }
+
+    protected void setDeadline(long timeout, TimeUnit unit) {
+        this.deadlineNanos = unit.toNanos(timeout);
     }
 
-    private void handleMessage(Message message) {
-        handler.post(() -> {
-            HttpStatus httpStatus = HttpStatus.valueOf(message.getData().getInt("Status"));
-            if (httpStatus.is2xxSuccessful()) {
-                T object = responseType.cast(message.getData().getSerializable("Object"));
+    protected void setTransport(RestEngine.Transport transport) {
+        this.restEngine = restEngine.withTransport(transport);
+    }
+
+    private void handleResult(RestCall call, RestResult<T> result) {
+        call.post(() -> {
+            if (result != null && result.isSuccessful()) {
                 Optional.ofNullable(onSuccess)
-                        .ifPresent(s -> s.success(object, (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus));
-            } else {
+                        .ifPresent(s -> s.success(result.getBody(), result.getHeaders(), result.getStatus()));
+            } else if (result != null) {
                 Optional.ofNullable(onError)
-                        .ifPresent(e -> e.error(message.getData().getString("Message"), (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus));
+                        .ifPresent(e -> e.error(result.getMessage(), result.getHeaders(), result.getStatus()));
             }
-            Optional.ofNullable(after).ifPresent(handler::post);
+            finish(call);
         });
     }
 
-    private void process(ResponseEntity<Resource> responseEntity,
+    private void finish(RestCall call) {
+        call.post(() -> {
+            Optional.ofNullable(after).ifPresent(Runnable::run);
+            call.finish();
+        });
+    }
+
+    /**
+     * Cancel all requests started by this client, next ones are not started
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (RestCall call : calls) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Status of network error: 504 if deadline of call has passed, 503 otherwise
+     */
+    private static HttpStatus networkStatus(RestCall call) {
+        return call.isExpired() ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    private RestCall newCall() {
+        RestCall call = new RestCall(handler);
+        calls.add(call);
+        call.whenFinished(() -> calls.remove(call));
+        if (scope != null)
+            scope.join(call);
+        if (cancelled)
+            call.cancel();
+        else if (deadlineNanos > 0)
+            call.expireAfter(deadlineNanos, TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    private void process(RestCall call,
+                         ResponseEntity<Resource> responseEntity,
                          String filePath,
                          OnError onError,
                          Consumer<Integer> onProgress,
@@ -541,7 +699,7 @@ public class RestClient<T extends Serializable> {
             int count;
             int total = 0;
             int progress;
-            while ((count = inputStream.read(buffer)) != -1) {
+            while (!call.isCancelled() && (count = inputStream.read(buffer)) != -1) {
                 outputStream.write(buffer, 0, count);
                 total += count;
                 try {
@@ -549,30 +707,33 @@ public class RestClient<T extends Serializable> {
                         Thread.sleep(1);
                         progress = total * 100 / size;
                         int finalProgress = progress;
-                        handler.post(() -> onProgress.accept(finalProgress));
+                        call.post(() -> onProgress.accept(finalProgress));
                     }
                 } catch (InterruptedException e) {
-                    Optional.ofNullable(onError)
-                            .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                    Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                            .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
                 }
             }
             outputStream.flush();
             outputStream.close();
             inputStream.close();
-            if (total == size) {
+            if (call.isCancelled()) {
+                new File(file).delete();
+            } else if (total == size) {
                 Optional.ofNullable(onDownload)
-                        .ifPresent(download -> handler.post(() -> download.accept(file, mediaType.toString())));
+                        .ifPresent(download -> call.post(() -> download.accept(file, mediaType.toString())));
             } else {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error("Error while during downloading file", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error("Error while during downloading file", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
             }
         } catch (IOException e) {
-            Optional.ofNullable(onError)
-                    .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+            Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                    .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
         }
     }
 
-    private void process(ResponseEntity<Resource> responseEntity,
+    private void process(RestCall call,
+                         ResponseEntity<Resource> responseEntity,
                          OnError onError,
                          BiConsumer<ByteArrayOutputStream, HttpHeaders> onLoad) {
         try {
@@ -583,23 +744,25 @@ public class RestClient<T extends Serializable> {
             byte[] data = new byte[4096];
             int count;
             int total = 0;
-            while ((count = inputStream.read(data, 0, data.length)) != -1) {
+            while (!call.isCancelled() && (count = inputStream.read(data, 0, data.length)) != -1) {
                 buffer.write(data, 0, count);
                 total += count;
             }
             buffer.flush();
             buffer.close();
             inputStream.close();
+            if (call.isCancelled())
+                return;
             if (total == size) {
                 Optional.ofNullable(onLoad)
-                        .ifPresent(load -> handler.post(() -> load.accept(buffer, httpHeaders)));
+                        .ifPresent(load -> call.post(() -> load.accept(buffer, httpHeaders)));
             } else {
-                Optional.ofNullable(onError)
-                        .ifPresent(error -> error.error("Error while during loading data", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+                Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                        .ifPresent(error -> call.post(() -> error.error("Error while during loading data", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
             }
         } catch (IOException e) {
-            Optional.ofNullable(onError)
-                    .ifPresent(error -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
+            Optional.ofNullable(onError).filter(error -> !call.isCancelled())
+                    .ifPresent(error -> call.post(() -> error.error(e.getMessage(), responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR)));
         }
     }
 
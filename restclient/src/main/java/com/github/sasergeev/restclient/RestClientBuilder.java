@@ -1,11 +1,12 @@
 package com.github.sasergeev.restclient;
 
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 
 import androidx.core.os.HandlerCompat;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.squareup.okhttp.Call;
 
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
@@ -16,34 +17,46 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.OkHttpClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClientException;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.Serializable;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-
-import static java.util.concurrent.Executors.newCachedThreadPool;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Main class for asynchronous request to call API
  */
-public final class RestClientBuilder<T extends Serializable> {
-    private T instance;
+public final class RestClientBuilder<T> implements Cancellable {
+    private static final String WARNING = "Warning";
+    private static final String STALE_WARNING_CODE = "110";
+    private static final String STALE_WARNING = "110 - \"Response is stale\"";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
     private OnSuccess<T> onSuccess;
     private OnError onError;
     private OnExecute onExecute;
@@ -54,21 +67,32 @@ public final class RestClientBuilder<T extends Serializable> {
     private OnFinished onFinished;
     private final Class<T> responseType;
     private String queryUrl = "";
-    private final RestTemplate restTemplate;
-    private final ExecutorService executorService;
-    private final Message message = Message.obtain();
+    private RestEngine restEngine;
+    private RestDispatcher dispatcher;
+    private PreparedRequest<T> preparedRequest;
+    private boolean async;
+    private RestScope scope;
+    private RestObjectCache objectCache;
+    private long cacheTtl;
+    private TimeUnit cacheTtlUnit;
+    private boolean staleWhileRevalidate;
+    private boolean coalesce;
+    private RetryPolicy retryPolicy;
+    private boolean idempotencyKey;
+    private HedgePolicy hedgePolicy;
+    private RestDispatcher.Priority priority;
+    private RestBatch batch;
+    private long deadlineNanos;
+    private volatile boolean cancelled;
+    private final Set<RestCall> calls = ConcurrentHashMap.newKeySet();
     private final Handler handler = HandlerCompat.createAsync(Looper.getMainLooper());
+    private Executor callbackExecutor;
     private final HttpHeaders httpHeaders = new HttpHeaders();
 
     private RestClientBuilder(Class<T> clazz) {
         this.responseType = clazz;
-        this.restTemplate = new RestTemplate();
-        this.executorService = newCachedThreadPool();
-        try {
-            this.instance = clazz.newInstance();
-        } catch (IllegalAccessException | InstantiationException e) {
-            e.printStackTrace();
-        }
+        this.restEngine = RestEngine.getDefault();
+        this.dispatcher = RestDispatcher.getDefault();
     }
 
     /**
@@ -124,7 +148,185 @@ public final class RestClientBuilder<T extends Serializable> {
      * Use this if required ssl-connection
      */
     public RestClientBuilder<T> ssl(InputStream x509Cert) {
-        this.restTemplate.setRequestFactory(new OkHttpClientHttpRequestFactory(SSLHttpClient.getInstance(x509Cert)));
+        this.restEngine = RestEngine.ssl(x509Cert);
+        return this;
+    }
+
+    /**
+     * Open connection to host of url in background and prime converters for response type, call it after url and ssl
+     */
+    public RestClientBuilder<T> preconnect() {
+        restEngine.preconnect(queryUrl, responseType);
+        return this;
+    }
+
+    /**
+     * Use this for run requests on own dispatcher instead of default one
+     */
+    public RestClientBuilder<T> dispatcher(RestDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Deliver callbacks by executor instead of main thread, for unit tests without looper
+     */
+    RestClientBuilder<T> callbackExecutor(Executor executor) {
+        this.callbackExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Priority of requests in dispatcher queue, by default NORMAL for requests and BACKGROUND for downloads
+     */
+    public RestClientBuilder<T> priority(RestDispatcher.Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Own connect, read and write timeouts of requests instead of 120 s of engine, call it after ssl
+     */
+    public RestClientBuilder<T> timeouts(long connectTimeout, long readTimeout, long writeTimeout, TimeUnit unit) {
+        this.restEngine = restEngine.withTimeouts(connectTimeout, readTimeout, writeTimeout, unit);
+        return this;
+    }
+
+    /**
+     * Transport of requests, e.g. HTTP/2 with one multiplexed connection per host, call it after ssl
+     */
+    public RestClientBuilder<T> transport(RestEngine.Transport transport) {
+        this.restEngine = restEngine.withTransport(transport);
+        return this;
+    }
+
+    /**
+     * Overall deadline of each request including retries and hedges, remaining time is sent in X-Request-Timeout header.
+     * When deadline passes request is aborted and error is delivered with 504.
+     */
+    public RestClientBuilder<T> deadline(long timeout, TimeUnit unit) {
+        this.deadlineNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Keep deserialized responses of GET-requests in memory for some time, next same requests are served from it
+     */
+    public RestClientBuilder<T> cache(long ttl, TimeUnit unit) {
+        return cache(RestObjectCache.getDefault(), ttl, unit);
+    }
+
+    /**
+     * Keep deserialized responses of GET-requests in own cache for some time
+     */
+    public RestClientBuilder<T> cache(RestObjectCache objectCache, long ttl, TimeUnit unit) {
+        this.objectCache = objectCache;
+        this.cacheTtl = ttl;
+        this.cacheTtlUnit = unit;
+        return this;
+    }
+
+    /**
+     * GET-request delivers cached response to success at once, flagged by {@link #isStale(HttpHeaders)},
+     * and then fresh one from network. Cached response is taken from memory cache or disk HTTP cache.
+     */
+    public RestClientBuilder<T> staleWhileRevalidate() {
+        this.staleWhileRevalidate = true;
+        return this;
+    }
+
+    /**
+     * Share one network call between identical GET-requests in flight (same URI, headers and response type),
+     * the same response object is delivered to all of them
+     */
+    public RestClientBuilder<T> coalesce() {
+        this.coalesce = true;
+        return this;
+    }
+
+    /**
+     * True if response is cached one delivered before revalidation
+     */
+    public static boolean isStale(HttpHeaders headers) {
+        List<String> warnings = headers != null ? headers.get(WARNING) : null;
+        if (warnings != null) {
+            for (String warning : warnings) {
+                if (warning.startsWith(STALE_WARNING_CODE))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retry failed requests of idempotent methods by default policy
+     */
+    public RestClientBuilder<T> retry() {
+        return retry(RetryPolicy.getDefault());
+    }
+
+    /**
+     * Retry failed requests of idempotent methods by own policy
+     */
+    public RestClientBuilder<T> retry(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Send Idempotency-Key header, so POST and PATCH requests are retried too
+     */
+    public RestClientBuilder<T> idempotencyKey(String key) {
+        this.httpHeaders.set(IDEMPOTENCY_KEY, key);
+        this.idempotencyKey = true;
+        return this;
+    }
+
+    /**
+     * Hedge slow GET-requests by default policy
+     */
+    public RestClientBuilder<T> hedge() {
+        return hedge(HedgePolicy.getDefault());
+    }
+
+    /**
+     * Hedge slow GET-requests by own policy: second request is sent after delay and first response wins.
+     * Hedged requests are always enqueued in non-blocking mode.
+     */
+    public RestClientBuilder<T> hedge(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    /**
+     * Join requests of this builder to scope, they are cancelled together with it
+     */
+    public RestClientBuilder<T> scope(RestScope scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    /**
+     * Cancel requests of this builder when Activity or Fragment is destroyed
+     */
+    public RestClientBuilder<T> scope(LifecycleOwner owner) {
+        return scope(RestScope.of(owner));
+    }
+
+    /**
+     * Pack requests of this builder with other ones made within window of batch into one request to batch endpoint,
+     * with retry policy failed request is packed again into next batch
+     */
+    public RestClientBuilder<T> batch(RestBatch batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    /**
+     * Use non-blocking engine: request is enqueued to OkHttp dispatcher instead of holding worker thread
+     */
+    public RestClientBuilder<T> async() {
+        this.async = true;
         return this;
     }
 
@@ -196,497 +398,859 @@ public final class RestClientBuilder<T extends Serializable> {
      * GET-request for API with some params in URI like - param1={param1}&param2={param1}
      */
     public RestClientBuilder<T> get(Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            HttpEntity<?> httpEntity = new HttpEntity<>(httpHeaders);
-            ResponseEntity<?> responseEntity = null;
-            try {
-                responseEntity = restTemplate.exchange(queryUrl, HttpMethod.GET, httpEntity, responseType, params);
-                if (onExecute != null)
-                    handler.post(() -> onExecute.execute());
-            } catch (HttpClientErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-            } catch (HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>("Timeout error connection", HttpStatus.GATEWAY_TIMEOUT);
-            } finally {
-                Bundle bundle = new Bundle();
-                if (responseEntity != null) {
-                    execute(responseEntity, bundle);
-                }
-                message.setTarget(handler);
-                message.setData(bundle);
-                handleMessage(message);
-            }
-        });
-        return this;
+        return execute(HttpMethod.GET, new HttpEntity<>(requestHeaders(null)), params);
     }
 
     /**
      * POST-request for API with body and params
      */
     public RestClientBuilder<T> post(MultiValueMap<String, Object> body, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(body, httpHeaders);
-            postExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.POST, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_FORM_URLENCODED)), params);
     }
 
     /**
      * POST-request for API with JSON-body and params
      */
     public RestClientBuilder<T> post(Map<String, Object> body, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> httpEntity = new HttpEntity<>(body, httpHeaders);
-            postExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.POST, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_JSON)), params);
     }
 
     /**
      * POST-request for API with POJO-class and params
      */
     public RestClientBuilder<T> post(T object, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<T> httpEntity = new HttpEntity<>(object, httpHeaders);
-            postExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.POST, new HttpEntity<>(object, requestHeaders(MediaType.APPLICATION_JSON)), params);
     }
 
     /**
      * POST-request for API with some files
      */
     public RestClientBuilder<T> post(Map<String, String> body, String keyFile, MediaType mediaType, ByteArrayResource... resources) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
-            this.httpHeaders.setContentType(MediaType.MULTIPART_FORM_DATA);
-            HttpHeaders imageHeaders = new HttpHeaders();
-            imageHeaders.setContentType(mediaType);
-            for (ByteArrayResource resource : resources) {
-                if (resource != null) {
-                    HttpEntity<ByteArrayResource> imageResources = new HttpEntity<>(resource, imageHeaders);
-                    requestBody.add(keyFile, imageResources);
-                }
-            }
-            HttpHeaders textHeaders = new HttpHeaders();
-            textHeaders.setContentType(new MediaType("application", "json", StandardCharsets.UTF_8));
-            for (Map.Entry<String, String> entry : body.entrySet()) {
-                HttpEntity<String> stringEntity = new HttpEntity<>(entry.getValue(), textHeaders);
-                requestBody.add(entry.getKey(), stringEntity);
-            }
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(requestBody, httpHeaders);
-            postExecute(httpEntity);
-        });
-        return this;
+        return execute(HttpMethod.POST, new HttpEntity<>(multipartBody(body, keyFile, mediaType, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)));
     }
 
     /**
      * POST-request for API with some files
      */
     public RestClientBuilder<T> post(String key, Collection<ByteArrayResource> resources, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
-            this.httpHeaders.setContentType(MediaType.MULTIPART_FORM_DATA);
-            for (ByteArrayResource resource : resources) {
-                if (resource != null) {
-                    requestBody.add(key, resources);
-                }
-            }
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(requestBody, httpHeaders);
-            postExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.POST, new HttpEntity<>(multipartBody(key, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)), params);
     }
 
     /**
      * PUT-request for API with JSON-body and params
      */
     public RestClientBuilder<T> put(Map<String, Object> body, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> httpEntity = new HttpEntity<>(body, httpHeaders);
-            putExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.PUT, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_JSON)), params);
     }
 
     /**
      * PUT-request for API with POJO-class and params
      */
     public RestClientBuilder<T> put(T object, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<T> httpEntity = new HttpEntity<>(object, httpHeaders);
-            putExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.PUT, new HttpEntity<>(object, requestHeaders(MediaType.APPLICATION_JSON)), params);
     }
 
     /**
      * PUT-request for API with body and params
      */
     public RestClientBuilder<T> put(MultiValueMap<String, Object> body, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            this.httpHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(body, httpHeaders);
-            putExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.PUT, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_FORM_URLENCODED)), params);
     }
 
     /**
      * PUT-request for API with some files
      */
     public RestClientBuilder<T> put(Map<String, String> body, String key, MediaType mediaType, ByteArrayResource... resources) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
-            this.httpHeaders.setContentType(MediaType.MULTIPART_FORM_DATA);
-            HttpHeaders imageHeaders = new HttpHeaders();
-            imageHeaders.setContentType(mediaType);
-            for (ByteArrayResource resource : resources) {
-                if (resource != null) {
-                    HttpEntity<ByteArrayResource> imageResources = new HttpEntity<>(resource, imageHeaders);
-                    requestBody.add(key, imageResources);
-                }
-            }
-            HttpHeaders textHeaders = new HttpHeaders();
-            textHeaders.setContentType(new MediaType("application", "json", StandardCharsets.UTF_8));
-            for (Map.Entry<String, String> entry : body.entrySet()) {
-                HttpEntity<String> stringEntity = new HttpEntity<>(entry.getValue(), textHeaders);
-                requestBody.add(entry.getKey(), stringEntity);
-            }
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(requestBody, httpHeaders);
-            putExecute(httpEntity);
-        });
-        return this;
+        return execute(HttpMethod.PUT, new HttpEntity<>(multipartBody(body, key, mediaType, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)));
     }
 
     /**
      * PUT-request for API with some files
      */
     public RestClientBuilder<T> put(String key, Collection<ByteArrayResource> resources, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
-            this.httpHeaders.setContentType(MediaType.MULTIPART_FORM_DATA);
-            for (ByteArrayResource resource : resources) {
-                if (resource != null) {
-                    requestBody.add(key, resources);
-                }
-            }
-            HttpEntity<MultiValueMap<String, Object>> httpEntity = new HttpEntity<>(requestBody, httpHeaders);
-            putExecute(httpEntity, params);
-        });
-        return this;
+        return execute(HttpMethod.PUT, new HttpEntity<>(multipartBody(key, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)), params);
     }
 
     /**
      * DELETE-request for API with params
      */
     public RestClientBuilder<T> delete(Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            HttpEntity<?> httpEntity = new HttpEntity<>(httpHeaders);
-            ResponseEntity<?> responseEntity = null;
-            try {
-                responseEntity = restTemplate.exchange(queryUrl, HttpMethod.DELETE, httpEntity, responseType, params);
-                if (onExecute != null)
-                    handler.post(() -> onExecute.execute());
-            } catch (HttpClientErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-            } catch (HttpServerErrorException e) {
-                responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (ResourceAccessException e) {
-                responseEntity = new ResponseEntity<>("Network error connection", HttpStatus.GATEWAY_TIMEOUT);
-            } finally {
-                Bundle bundle = new Bundle();
-                if (responseEntity != null) {
-                    execute(responseEntity, bundle);
+        return execute(HttpMethod.DELETE, new HttpEntity<>(requestHeaders(null)), params);
+    }
+
+    /**
+     * GET-request returning future instead of callbacks, it is completed on worker thread
+     */
+    public CompletableFuture<ResponseEntity<T>> getFuture(Object... params) {
+        return future(HttpMethod.GET, new HttpEntity<>(requestHeaders(null)), params);
+    }
+
+    /**
+     * POST-request with body returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> postFuture(MultiValueMap<String, Object> body, Object... params) {
+        return future(HttpMethod.POST, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_FORM_URLENCODED)), params);
+    }
+
+    /**
+     * POST-request with JSON-body returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> postFuture(Map<String, Object> body, Object... params) {
+        return future(HttpMethod.POST, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_JSON)), params);
+    }
+
+    /**
+     * POST-request with POJO-class returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> postFuture(T object, Object... params) {
+        return future(HttpMethod.POST, new HttpEntity<>(object, requestHeaders(MediaType.APPLICATION_JSON)), params);
+    }
+
+    /**
+     * POST-request with some files returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> postFuture(Map<String, String> body, String keyFile, MediaType mediaType, ByteArrayResource... resources) {
+        return future(HttpMethod.POST, new HttpEntity<>(multipartBody(body, keyFile, mediaType, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)));
+    }
+
+    /**
+     * POST-request with some files returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> postFuture(String key, Collection<ByteArrayResource> resources, Object... params) {
+        return future(HttpMethod.POST, new HttpEntity<>(multipartBody(key, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)), params);
+    }
+
+    /**
+     * PUT-request with JSON-body returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> putFuture(Map<String, Object> body, Object... params) {
+        return future(HttpMethod.PUT, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_JSON)), params);
+    }
+
+    /**
+     * PUT-request with POJO-class returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> putFuture(T object, Object... params) {
+        return future(HttpMethod.PUT, new HttpEntity<>(object, requestHeaders(MediaType.APPLICATION_JSON)), params);
+    }
+
+    /**
+     * PUT-request with body returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> putFuture(MultiValueMap<String, Object> body, Object... params) {
+        return future(HttpMethod.PUT, new HttpEntity<>(body, requestHeaders(MediaType.APPLICATION_FORM_URLENCODED)), params);
+    }
+
+    /**
+     * PUT-request with some files returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> putFuture(Map<String, String> body, String key, MediaType mediaType, ByteArrayResource... resources) {
+        return future(HttpMethod.PUT, new HttpEntity<>(multipartBody(body, key, mediaType, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)));
+    }
+
+    /**
+     * PUT-request with some files returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> putFuture(String key, Collection<ByteArrayResource> resources, Object... params) {
+        return future(HttpMethod.PUT, new HttpEntity<>(multipartBody(key, resources), requestHeaders(MediaType.MULTIPART_FORM_DATA)), params);
+    }
+
+    /**
+     * DELETE-request with params returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> deleteFuture(Object... params) {
+        return future(HttpMethod.DELETE, new HttpEntity<>(requestHeaders(null)), params);
+    }
+
+    /**
+     * Prepared request returning future
+     */
+    public CompletableFuture<ResponseEntity<T>> callFuture(Object... params) {
+        PreparedRequest<T> request = preparedRequest;
+        if (request == null)
+            throw new IllegalStateException("Request is not prepared, use build(PreparedRequest)");
+        String cacheKey = cacheKey(request.getMethod(), () -> request.expand(params), request.getEntity());
+        return future(request.getMethod(), request.getUrl(), cacheKey, () -> request.execute(params), callback -> request.enqueue(callback, params));
+    }
+
+    /**
+     * Execute prepared request, only params of URI template are bound per call
+     */
+    public RestClientBuilder<T> call(Object... params) {
+        PreparedRequest<T> request = preparedRequest;
+        if (request == null)
+            throw new IllegalStateException("Request is not prepared, use build(PreparedRequest)");
+        String cacheKey = cacheKey(request.getMethod(), () -> request.expand(params), request.getEntity());
+        RestCall call = newCall();
+        if (deliverCached(call, cacheKey))
+            return this;
+        if (async || isHedged(request.getMethod())) {
+            preExecute(call);
+            enqueue(request.getMethod(), call, hedging(request.getMethod(), call, callback -> request.enqueue(callback, params)),
+                    caching(cacheKey, resultCallback(request.getMethod(), call)));
+            return this;
+        }
+        dispatcher.execute(request.getUrl(), priorityOr(RestDispatcher.Priority.NORMAL), () -> call.run(() -> {
+            preExecute(call);
+            exchange(request.getMethod(), request.getUrl(), call, caching(cacheKey, () -> request.execute(params)));
+        }));
+        return this;
+    }
+
+    /**
+     * Compile current url, headers and engine into immutable request for repeated calls
+     */
+    public PreparedRequest<T> prepare(HttpMethod httpMethod) {
+        return new PreparedRequest<>(httpMethod, queryUrl, requestHeaders(null), responseType, restEngine);
+    }
+
+    private RestClientBuilder<T> execute(HttpMethod httpMethod, HttpEntity<?> httpEntity, Object... params) {
+        String url = queryUrl;
+        RestEngine engine = restEngine;
+        String cacheKey = cacheKey(httpMethod, () -> UrlTemplate.parse(url).expand(params), httpEntity);
+        RestCall call = newCall();
+        if (deliverCached(call, cacheKey))
+            return this;
+        if (staleWhileRevalidate && httpMethod == HttpMethod.GET) {
+            dispatcher.execute(url, priorityOr(RestDispatcher.Priority.NORMAL), () -> call.run(() -> {
+                preExecute(call);
+                ResponseEntity<T> cached = cachedResponse(cacheKey, engine, url, httpEntity, params);
+                if (cached != null && !isStale(cached.getHeaders())) {
+                    handleResult(call, RestResult.of(cached));
+                    return;
                 }
-                message.setTarget(handler);
-                message.setData(bundle);
-                handleMessage(message);
-            }
-        });
+                if (cached != null) {
+                    call.post(() -> {
+                        if (onSuccess != null)
+                            onSuccess.success(cached.getBody(), cached.getHeaders(), cached.getStatusCode());
+                    });
+                }
+                exchange(httpMethod, url, call, caching(cacheKey, () -> engine.exchange(url, httpMethod, httpEntity, responseType, params)));
+            }));
+            return this;
+        }
+        if (coalesce && httpMethod == HttpMethod.GET) {
+            preExecute(call);
+            coalesced(call, engine, url, httpEntity, cacheKey, params).whenComplete((responseEntity, throwable) -> {
+                if (throwable == null) {
+                    if (onExecute != null)
+                        call.post(() -> onExecute.execute());
+                    handleResult(call, RestResult.of(responseEntity));
+                } else {
+                    Throwable cause = unwrap(throwable);
+                    handleResult(call, errorResult(httpMethod, cause instanceof RestClientException
+                            ? (RestClientException) cause : new RestClientException(cause.getMessage(), cause)));
+                }
+            });
+            return this;
+        }
+        if (batch != null) {
+            preExecute(call);
+            RestBatch restBatch = batch;
+            URI uri = UrlTemplate.parse(url).expand(params);
+            enqueue(httpMethod, call, callback -> {
+                restBatch.add(call, httpMethod, uri, httpEntity, responseType, callback);
+                return null;
+            }, caching(cacheKey, resultCallback(httpMethod, call)));
+            return this;
+        }
+        if (async || isHedged(httpMethod)) {
+            preExecute(call);
+            enqueue(httpMethod, call, hedging(httpMethod, call, callback -> engine.enqueue(url, httpMethod, httpEntity, responseType, callback, params)),
+                    caching(cacheKey, resultCallback(httpMethod, call)));
+            return this;
+        }
+        dispatcher.execute(url, priorityOr(RestDispatcher.Priority.NORMAL), () -> call.run(() -> {
+            preExecute(call);
+            exchange(httpMethod, url, call, caching(cacheKey, () -> engine.exchange(url, httpMethod, httpEntity, responseType, params)));
+        }));
         return this;
     }
 
-    private void handleMessage(Message message) {
-        handler.post(() -> {
-            HttpStatus httpStatus = HttpStatus.valueOf(message.getData().getInt("Status"));
-            if (httpStatus.is2xxSuccessful()) {
-                instance = responseType.cast(message.getData().getSerializable("Object"));
-                if (onSuccess != null)
-                    onSuccess.success(instance, (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus);
-            } else if (httpStatus.is4xxClientError() || httpStatus.is5xxServerError()) {
-                if (onError != null)
-                    onError.error(message.getData().getString("Message"), (HttpHeaders) message.getData().getSerializable("Headers"), httpStatus);
-            }
-            if (onPostExecute != null)
-                handler.post(() -> onPostExecute.finish());
-            executorService.shutdown();
-        });
+    /**
+     * Cancel all requests and downloads started by this builder, next ones are not started
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (RestCall call : calls) {
+            call.cancel();
+        }
     }
 
-    private void execute(ResponseEntity<?> responseEntity, Bundle bundle) {
-        HttpStatus httpStatus = responseEntity.getStatusCode();
-        bundle.putInt("Status", responseEntity.getStatusCode().value());
-        if (httpStatus.is2xxSuccessful()) {
-            bundle.putSerializable("Object", (Serializable) responseEntity.getBody());
-            bundle.putSerializable("Headers", responseEntity.getHeaders());
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private RestCall newCall() {
+        RestCall call = callbackExecutor != null ? new RestCall(callbackExecutor) : new RestCall(handler);
+        calls.add(call);
+        call.whenFinished(() -> calls.remove(call));
+        if (scope != null)
+            scope.join(call);
+        if (cancelled)
+            call.cancel();
+        else if (deadlineNanos > 0)
+            call.expireAfter(deadlineNanos, TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    private CompletableFuture<ResponseEntity<T>> future(HttpMethod httpMethod, HttpEntity<?> httpEntity, Object... params) {
+        String url = queryUrl;
+        RestEngine engine = restEngine;
+        String cacheKey = cacheKey(httpMethod, () -> UrlTemplate.parse(url).expand(params), httpEntity);
+        if (coalesce && httpMethod == HttpMethod.GET) {
+            ResponseEntity<T> cached = cacheKey != null ? objectCache.get(cacheKey) : null;
+            if (cached != null)
+                return CompletableFuture.completedFuture(cached);
+            RestCall call = newCall();
+            CompletableFuture<ResponseEntity<T>> future = cancellableFuture(call);
+            coalesced(call, engine, url, httpEntity, cacheKey, params).whenComplete((responseEntity, throwable) -> {
+                if (throwable == null)
+                    future.complete(responseEntity);
+                else
+                    future.completeExceptionally(unwrap(throwable));
+                call.finish();
+            });
+            return future;
+        }
+        return future(httpMethod, url, cacheKey,
+                () -> engine.exchange(url, httpMethod, httpEntity, responseType, params),
+                callback -> engine.enqueue(url, httpMethod, httpEntity, responseType, callback, params));
+    }
+
+    /**
+     * Future of one call: blocking exchange on dispatcher or enqueued one in non-blocking mode.
+     * Cancelling future cancels the call and vice versa.
+     */
+    private CompletableFuture<ResponseEntity<T>> future(HttpMethod httpMethod,
+                                                        String url,
+                                                        String cacheKey,
+                                                        Supplier<ResponseEntity<T>> exchange,
+                                                        Function<AsyncExchange.ExchangeCallback<T>, Call> enqueue) {
+        ResponseEntity<T> cached = cacheKey != null ? objectCache.get(cacheKey) : null;
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        return future(newCall(), httpMethod, url, cacheKey, exchange, enqueue);
+    }
+
+    private CompletableFuture<ResponseEntity<T>> future(RestCall call,
+                                                        HttpMethod httpMethod,
+                                                        String url,
+                                                        String cacheKey,
+                                                        Supplier<ResponseEntity<T>> exchange,
+                                                        Function<AsyncExchange.ExchangeCallback<T>, Call> enqueue) {
+        CompletableFuture<ResponseEntity<T>> future = cancellableFuture(call);
+        AsyncExchange.ExchangeCallback<T> callback = new AsyncExchange.ExchangeCallback<T>() {
+            @Override
+            public void onResponse(ResponseEntity<T> responseEntity) {
+                future.complete(responseEntity);
+                call.finish();
+            }
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                if (call.isCancelled())
+                    future.cancel(false);
+                else
+                    future.completeExceptionally(exception);
+                call.finish();
+            }
+        };
+        if (async || isHedged(httpMethod)) {
+            enqueue(httpMethod, call, hedging(httpMethod, call, enqueue), caching(cacheKey, callback));
         } else {
-            bundle.putString("Message", (String) responseEntity.getBody());
+            dispatcher.execute(url, priorityOr(RestDispatcher.Priority.NORMAL), () -> call.run(() ->
+                    retrying(httpMethod, url, call, caching(cacheKey, exchange), outcome -> {
+                        ResponseEntity<T> responseEntity;
+                        try {
+                            responseEntity = outcome.get();
+                        } catch (RestClientException e) {
+                            callback.onFailure(e);
+                            return;
+                        } catch (RuntimeException e) {
+                            future.completeExceptionally(e);
+                            call.finish();
+                            return;
+                        }
+                        callback.onResponse(responseEntity);
+                    })));
         }
+        return future;
+    }
+
+    /**
+     * Future which cancels call when it is cancelled and is cancelled when call is cancelled
+     */
+    private CompletableFuture<ResponseEntity<T>> cancellableFuture(RestCall call) {
+        CompletableFuture<ResponseEntity<T>> future = new CompletableFuture<ResponseEntity<T>>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                call.cancel();
+                return cancelled;
+            }
+        };
+        call.whenFinished(() -> future.cancel(false));
+        return future;
     }
 
-    private void postExecute(HttpEntity<?> httpEntity) {
-        ResponseEntity<?> responseEntity = null;
+    /**
+     * Result of identical GET-request in flight, network call is not bound to this builder,
+     * so cancelling it only stops waiting for result
+     */
+    private CompletableFuture<ResponseEntity<T>> coalesced(RestCall call, RestEngine engine, String url, HttpEntity<?> httpEntity, String cacheKey, Object... params) {
+        String key = RestObjectCache.key(responseType, UrlTemplate.parse(url).expand(params), httpEntity.getHeaders());
+        return engine.coalesce(key, call, () -> future(networkCall(), HttpMethod.GET, url, cacheKey,
+                () -> engine.exchange(url, HttpMethod.GET, httpEntity, responseType, params),
+                callback -> engine.enqueue(url, HttpMethod.GET, httpEntity, responseType, callback, params)));
+    }
+
+    /**
+     * Call of shared network request, it is not bound to builder but has its deadline
+     */
+    private RestCall networkCall() {
+        RestCall call = callbackExecutor != null ? new RestCall(callbackExecutor) : new RestCall(handler);
+        if (deadlineNanos > 0)
+            call.expireAfter(deadlineNanos, TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * Key of response in object cache or null if request is not cached
+     */
+    private String cacheKey(HttpMethod httpMethod, Supplier<URI> uri, HttpEntity<?> httpEntity) {
+        if (objectCache == null || httpMethod != HttpMethod.GET)
+            return null;
+        return RestObjectCache.key(responseType, uri.get(), httpEntity.getHeaders());
+    }
+
+    /**
+     * Post before callback, it is looked up when posted runnable runs, so it may be set after request is started
+     */
+    private void preExecute(RestCall call) {
+        call.post(() -> {
+            if (onPreExecute != null)
+                onPreExecute.before();
+        });
+    }
+
+    private boolean deliverCached(RestCall call, String cacheKey) {
+        ResponseEntity<T> cached = cacheKey != null ? objectCache.get(cacheKey) : null;
+        if (cached == null)
+            return false;
+        preExecute(call);
+        handleResult(call, RestResult.of(cached));
+        return true;
+    }
+
+    /**
+     * Cached response for stale-while-revalidate: expired one from memory cache or any one from disk HTTP cache,
+     * stale response has Warning 110
+     */
+    private ResponseEntity<T> cachedResponse(String cacheKey, RestEngine engine, String url, HttpEntity<?> httpEntity, Object... params) {
+        ResponseEntity<T> cached = cacheKey != null ? objectCache.getStale(cacheKey) : null;
+        if (cached != null) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(cached.getHeaders());
+            headers.add(WARNING, STALE_WARNING);
+            return new ResponseEntity<>(cached.getBody(), headers, cached.getStatusCode());
+        }
+        if (RestEngine.getCache() == null)
+            return null;
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(httpEntity.getHeaders());
+        headers.set(HttpHeaders.CACHE_CONTROL, "only-if-cached, max-stale=" + Integer.MAX_VALUE);
         try {
-            responseEntity = restTemplate.exchange(queryUrl, HttpMethod.POST, httpEntity, responseType);
-            if (onExecute != null)
-                handler.post(() -> onExecute.execute());
-        } catch (HttpClientErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-        } catch (HttpServerErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ResourceAccessException e) {
-            responseEntity = new ResponseEntity<>("Network error connection", HttpStatus.GATEWAY_TIMEOUT);
-        } finally {
-            Bundle bundle = new Bundle();
-            if (responseEntity != null) {
-                execute(responseEntity, bundle);
+            return engine.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), responseType, params);
+        } catch (RestClientException e) {
+            return null;
+        }
+    }
+
+    private Supplier<ResponseEntity<T>> caching(String cacheKey, Supplier<ResponseEntity<T>> exchange) {
+        if (cacheKey == null)
+            return exchange;
+        RestObjectCache cache = objectCache;
+        long ttl = cacheTtl;
+        TimeUnit unit = cacheTtlUnit;
+        return () -> {
+            ResponseEntity<T> responseEntity = exchange.get();
+            if (responseEntity.getStatusCode().is2xxSuccessful())
+                cache.put(cacheKey, responseEntity, ttl, unit);
+            return responseEntity;
+        };
+    }
+
+    private AsyncExchange.ExchangeCallback<T> caching(String cacheKey, AsyncExchange.ExchangeCallback<T> callback) {
+        if (cacheKey == null)
+            return callback;
+        RestObjectCache cache = objectCache;
+        long ttl = cacheTtl;
+        TimeUnit unit = cacheTtlUnit;
+        return new AsyncExchange.ExchangeCallback<T>() {
+            @Override
+            public void onResponse(ResponseEntity<T> responseEntity) {
+                if (responseEntity.getStatusCode().is2xxSuccessful())
+                    cache.put(cacheKey, responseEntity, ttl, unit);
+                callback.onResponse(responseEntity);
+            }
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                callback.onFailure(exception);
             }
-            message.setTarget(handler);
-            message.setData(bundle);
-            handleMessage(message);
+        };
+    }
+
+    /**
+     * Run blocking exchange in current task of dispatcher and pass its outcome to handler,
+     * with retry policy failed attempt is run again in new task after backoff
+     */
+    private void retrying(HttpMethod httpMethod, String url, RestCall call, Supplier<ResponseEntity<T>> exchange,
+                          Consumer<Supplier<ResponseEntity<T>>> handler) {
+        RetryPolicy policy = retryPolicy;
+        if (policy == null || !RetryPolicy.isRetryable(httpMethod, idempotencyKey))
+            handler.accept(exchange);
+        else
+            policy.execute(dispatcher, url, priorityOr(RestDispatcher.Priority.NORMAL), call, exchange, handler);
+    }
+
+    private RestDispatcher.Priority priorityOr(RestDispatcher.Priority fallback) {
+        return priority != null ? priority : fallback;
+    }
+
+    private boolean isHedged(HttpMethod httpMethod) {
+        return hedgePolicy != null && httpMethod == HttpMethod.GET;
+    }
+
+    /**
+     * Enqueue function starting hedged exchange for GET-request if hedging is enabled
+     */
+    private Function<AsyncExchange.ExchangeCallback<T>, Call> hedging(HttpMethod httpMethod, RestCall call,
+                                                                      Function<AsyncExchange.ExchangeCallback<T>, Call> enqueue) {
+        HedgePolicy policy = hedgePolicy;
+        if (policy == null || httpMethod != HttpMethod.GET)
+            return enqueue;
+        return callback -> {
+            HedgedExchange.start(call, policy, enqueue, callback);
+            return null;
+        };
+    }
+
+    /**
+     * Enqueue request in non-blocking mode, failed attempt is enqueued again by retry policy after backoff
+     */
+    private void enqueue(HttpMethod httpMethod, RestCall call, Function<AsyncExchange.ExchangeCallback<T>, Call> enqueue,
+                         AsyncExchange.ExchangeCallback<T> callback) {
+        RetryPolicy policy = retryPolicy;
+        if (policy == null || !RetryPolicy.isRetryable(httpMethod, idempotencyKey)) {
+            call.attach(call.bind(() -> enqueue.apply(callback)));
+            return;
         }
+        policy.onRequest();
+        AsyncExchange.ExchangeCallback<T> retryCallback = new AsyncExchange.ExchangeCallback<T>() {
+            private int attempt;
+
+            @Override
+            public void onResponse(ResponseEntity<T> responseEntity) {
+                callback.onResponse(responseEntity);
+            }
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                long delay = call.isCancelled() || call.isExpired() ? -1 : policy.retryDelay(attempt++, exception);
+                if (delay < 0) {
+                    callback.onFailure(exception);
+                    return;
+                }
+                AsyncExchange.ExchangeCallback<T> retry = this;
+                RestTimer.schedule(() -> {
+                    if (call.isCancelled() || call.isExpired())
+                        callback.onFailure(exception);
+                    else
+                        call.attach(call.bind(() -> enqueue.apply(retry)));
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        };
+        call.attach(call.bind(() -> enqueue.apply(retryCallback)));
     }
 
-    private void postExecute(HttpEntity<?> httpEntity, Object... params) {
-        ResponseEntity<?> responseEntity = null;
-        try {
-            responseEntity = restTemplate.exchange(queryUrl, HttpMethod.POST, httpEntity, responseType, params);
-            if (onExecute != null)
-                handler.post(() -> onExecute.execute());
-        } catch (HttpClientErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-        } catch (HttpServerErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ResourceAccessException e) {
-            responseEntity = new ResponseEntity<>("Network error connection", HttpStatus.GATEWAY_TIMEOUT);
-        } finally {
-            Bundle bundle = new Bundle();
-            if (responseEntity != null) {
-                execute(responseEntity, bundle);
+    private void exchange(HttpMethod httpMethod, String url, RestCall call, Supplier<ResponseEntity<T>> exchange) {
+        retrying(httpMethod, url, call, exchange, outcome -> {
+            RestResult<T> result = null;
+            try {
+                result = RestResult.of(outcome.get());
+                if (onExecute != null)
+                    call.post(() -> onExecute.execute());
+            } catch (RestClientException e) {
+                result = errorResult(httpMethod, e);
+            } finally {
+                handleResult(call, result);
+            }
+        });
+    }
+
+    private AsyncExchange.ExchangeCallback<T> resultCallback(HttpMethod httpMethod, RestCall call) {
+        return new AsyncExchange.ExchangeCallback<T>() {
+            @Override
+            public void onResponse(ResponseEntity<T> responseEntity) {
+                if (onExecute != null)
+                    call.post(() -> onExecute.execute());
+                handleResult(call, RestResult.of(responseEntity));
             }
-            message.setTarget(handler);
-            message.setData(bundle);
-            handleMessage(message);
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                handleResult(call, errorResult(httpMethod, exception));
+            }
+        };
+    }
+
+    private RestResult<T> errorResult(HttpMethod httpMethod, RestClientException exception) {
+        if (exception instanceof HttpClientErrorException) {
+            HttpClientErrorException e = (HttpClientErrorException) exception;
+            return RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), e.getStatusCode());
+        } else if (exception instanceof HttpServerErrorException) {
+            HttpServerErrorException e = (HttpServerErrorException) exception;
+            return RestResult.error(e.getResponseBodyAsString(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } else if (exception.getCause() instanceof CircuitBreaker.OpenException) {
+            return RestResult.error(exception.getCause().getMessage(), new HttpHeaders(), HttpStatus.SERVICE_UNAVAILABLE);
+        } else if (exception instanceof ResourceAccessException) {
+            return RestResult.error(httpMethod == HttpMethod.GET ? "Timeout error connection" : "Network error connection", new HttpHeaders(), HttpStatus.GATEWAY_TIMEOUT);
         }
+        return RestResult.error(exception.getMessage(), new HttpHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
-    private void putExecute(HttpEntity<?> httpEntity) {
-        ResponseEntity<?> responseEntity = null;
-        try {
-            responseEntity = restTemplate.exchange(queryUrl, HttpMethod.PUT, httpEntity, responseType);
-            if (onExecute != null)
-                handler.post(() -> onExecute.execute());
-        } catch (HttpClientErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-        } catch (HttpServerErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ResourceAccessException e) {
-            responseEntity = new ResponseEntity<>("Network error connection", HttpStatus.GATEWAY_TIMEOUT);
-        } finally {
-            Bundle bundle = new Bundle();
-            if (responseEntity != null) {
-                execute(responseEntity, bundle);
+    private void handleResult(RestCall call, RestResult<T> result) {
+        call.post(() -> {
+            if (result != null && result.isSuccessful()) {
+                if (onSuccess != null)
+                    onSuccess.success(result.getBody(), result.getHeaders(), result.getStatus());
+            } else if (result != null && (result.getStatus().is4xxClientError() || result.getStatus().is5xxServerError())) {
+                if (onError != null)
+                    onError.error(result.getMessage(), result.getHeaders(), result.getStatus());
+            }
+            finish(call);
+        });
+    }
+
+    private void finish(RestCall call) {
+        call.post(() -> {
+            if (onPostExecute != null)
+                onPostExecute.finish();
+            call.finish();
+        });
+    }
+
+    /**
+     * Copy of configured headers for one request, so concurrent requests don't change each other
+     */
+    private HttpHeaders requestHeaders(MediaType contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(httpHeaders);
+        if (contentType != null)
+            headers.setContentType(contentType);
+        return headers;
+    }
+
+    private MultiValueMap<String, Object> multipartBody(Map<String, String> body, String key, MediaType mediaType, ByteArrayResource... resources) {
+        MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
+        HttpHeaders imageHeaders = new HttpHeaders();
+        imageHeaders.setContentType(mediaType);
+        for (ByteArrayResource resource : resources) {
+            if (resource != null) {
+                HttpEntity<ByteArrayResource> imageResources = new HttpEntity<>(resource, imageHeaders);
+                requestBody.add(key, imageResources);
             }
-            message.setTarget(handler);
-            message.setData(bundle);
-            handleMessage(message);
         }
+        HttpHeaders textHeaders = new HttpHeaders();
+        textHeaders.setContentType(new MediaType("application", "json", StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> entry : body.entrySet()) {
+            HttpEntity<String> stringEntity = new HttpEntity<>(entry.getValue(), textHeaders);
+            requestBody.add(entry.getKey(), stringEntity);
+        }
+        return requestBody;
     }
 
-    private void putExecute(HttpEntity<?> httpEntity, Object... params) {
-        ResponseEntity<?> responseEntity = null;
-        try {
-            responseEntity = restTemplate.exchange(queryUrl, HttpMethod.PUT, httpEntity, responseType, params);
-            if (onExecute != null)
-                handler.post(() -> onExecute.execute());
-        } catch (HttpClientErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
-        } catch (HttpServerErrorException e) {
-            responseEntity = new ResponseEntity<>(e.getResponseBodyAsString(), HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (ResourceAccessException e) {
-            responseEntity = new ResponseEntity<>("Network error connection", HttpStatus.GATEWAY_TIMEOUT);
-        } finally {
-            Bundle bundle = new Bundle();
-            if (responseEntity != null) {
-                execute(responseEntity, bundle);
+    private MultiValueMap<String, Object> multipartBody(String key, Collection<ByteArrayResource> resources) {
+        MultiValueMap<String, Object> requestBody = new LinkedMultiValueMap<>();
+        for (ByteArrayResource resource : resources) {
+            if (resource != null) {
+                requestBody.add(key, resources);
             }
-            message.setTarget(handler);
-            message.setData(bundle);
-            handleMessage(message);
         }
+        return requestBody;
     }
 
     /**
      * Download file with some params
      */
-    public void download(String filePath, Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            HttpEntity<?> httpEntity = new HttpEntity<>(httpHeaders);
+    public RestCall download(String filePath, Object... params) {
+        String url = queryUrl;
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(requestHeaders(null));
+        RestCall call = newCall();
+        dispatcher.execute(url, priorityOr(RestDispatcher.Priority.BACKGROUND), () -> call.run(() -> {
+            preExecute(call);
             ResponseEntity<Resource> responseEntity;
             try {
-                responseEntity = restTemplate.exchange(queryUrl, HttpMethod.GET, httpEntity, Resource.class, params);
+                responseEntity = engine.exchange(url, HttpMethod.GET, httpEntity, Resource.class, params);
                 if (onExecute != null)
-                    handler.post(() -> onExecute.execute());
-                process(responseEntity, filePath);
+                    call.post(() -> onExecute.execute());
+                process(call, responseEntity, filePath);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
                 if (onError != null)
-                    handler.post(() -> onError.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
+                    call.post(() -> onError.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
             } catch (ResourceAccessException e) {
                 if (onError != null)
-                    handler.post(() -> onError.error("Network error connection", (HttpHeaders) message.getData().getSerializable("Headers"), HttpStatus.SERVICE_UNAVAILABLE));
+                    call.post(() -> onError.error("Network error connection", null, HttpStatus.SERVICE_UNAVAILABLE));
+            } catch (RestClientException e) {
+                if (onError != null)
+                    call.post(() -> onError.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR));
             } finally {
-                if (onPostExecute != null)
-                    handler.post(() -> onPostExecute.finish());
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
     }
 
     /**
      * Download file with some params
      */
-    public void download(Object... params) {
-        executorService.execute(() -> {
-            if (onPreExecute != null)
-                handler.post(() -> onPreExecute.before());
-            HttpEntity<?> httpEntity = new HttpEntity<>(httpHeaders);
+    public RestCall download(Object... params) {
+        String url = queryUrl;
+        RestEngine engine = restEngine;
+        HttpEntity<?> httpEntity = new HttpEntity<>(requestHeaders(null));
+        RestCall call = newCall();
+        dispatcher.execute(url, priorityOr(RestDispatcher.Priority.BACKGROUND), () -> call.run(() -> {
+            preExecute(call);
             ResponseEntity<Resource> responseEntity;
             try {
-                responseEntity = restTemplate.exchange(queryUrl, HttpMethod.GET, httpEntity, Resource.class, params);
+                responseEntity = engine.exchange(url, HttpMethod.GET, httpEntity, Resource.class, params);
                 if (onExecute != null)
-                    handler.post(() -> onExecute.execute());
-                process(responseEntity);
+                    call.post(() -> onExecute.execute());
+                process(call, responseEntity);
             } catch (HttpClientErrorException | HttpServerErrorException e) {
                 if (onError != null)
-                    handler.post(() -> onError.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
+                    call.post(() -> onError.error(e.getMessage(), e.getResponseHeaders(), e.getStatusCode()));
             } catch (ResourceAccessException e) {
                 if (onError != null)
-                    handler.post(() -> onError.error("Network error connection", (HttpHeaders) message.getData().getSerializable("Headers"), HttpStatus.SERVICE_UNAVAILABLE));
+                    call.post(() -> onError.error("Network error connection", null, HttpStatus.SERVICE_UNAVAILABLE));
+            } catch (RestClientException e) {
+                if (onError != null)
+                    call.post(() -> onError.error(e.getMessage(), null, HttpStatus.INTERNAL_SERVER_ERROR));
             } finally {
-                if (onPostExecute != null)
-                    handler.post(() -> onPostExecute.finish());
-                executorService.shutdown();
+                finish(call);
             }
-        });
+        }));
+        return call;
     }
 
-    private void process(ResponseEntity<Resource> responseEntity, String filePath) {
+    private void process(RestCall call, ResponseEntity<Resource> responseEntity, String filePath) {
+        MediaType mediaType = responseEntity.getHeaders().getContentType();
+        String fileName = "file" + "_" + new Date().getTime() + "." + mediaType.getSubtype();
+        String file = filePath + "/" + fileName;
         try {
-            MediaType mediaType = responseEntity.getHeaders().getContentType();
-            String fileName = "file" + "_" + new Date().getTime() + "." + mediaType.getSubtype();
-            String file = filePath + "/" + fileName;
             int size = (int) responseEntity.getBody().contentLength();
-            InputStream inputStream = new BufferedInputStream(responseEntity.getBody().getInputStream(), size);
-            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file, false));
-            byte[] buffer = new byte[2048];
-            int count;
             int total = 0;
-            int progress;
-            while ((count = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, count);
-                total += count;
-                try {
-                    if (onProgress != null) {
-                        Thread.sleep(1);
-                        progress = total * 100 / size;
-                        int finalProgress = progress;
-                        handler.post(() -> onProgress.progress(finalProgress));
+            try (InputStream inputStream = new BufferedInputStream(responseEntity.getBody().getInputStream(), size);
+                 OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file, false))) {
+                byte[] buffer = new byte[2048];
+                int count;
+                int progress;
+                while (!call.isCancelled() && (count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                    total += count;
+                    try {
+                        if (onProgress != null) {
+                            Thread.sleep(1);
+                            progress = total * 100 / size;
+                            int finalProgress = progress;
+                            call.post(() -> onProgress.progress(finalProgress));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Download is interrupted");
                     }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
                 }
             }
-            outputStream.flush();
-            outputStream.close();
-            inputStream.close();
-            if (total == size) {
+            if (call.isCancelled()) {
+                new File(file).delete();
+            } else if (total == size) {
                 if (onDownload != null)
-                    handler.post(() -> onDownload.done(file, mediaType.toString()));
+                    call.post(() -> onDownload.done(file, mediaType.toString()));
             } else {
+                new File(file).delete();
                 if (onError != null)
-                    onError.error("Error while saving file...", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                    call.post(() -> onError.error("Error while saving file...", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            new File(file).delete();
+            downloadError(call, responseEntity, e);
         }
     }
 
-    private void process(ResponseEntity<Resource> responseEntity) {
+    private void process(RestCall call, ResponseEntity<Resource> responseEntity) {
         try {
             HttpHeaders httpHeaders = responseEntity.getHeaders();
             int size = (int) responseEntity.getBody().contentLength();
-            InputStream inputStream = new BufferedInputStream(responseEntity.getBody().getInputStream(), size);
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[4096];
-            int count;
             int total = 0;
-            while ((count = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, count);
-                total += count;
+            try (InputStream inputStream = new BufferedInputStream(responseEntity.getBody().getInputStream(), size)) {
+                byte[] data = new byte[4096];
+                int count;
+                while (!call.isCancelled() && (count = inputStream.read(data, 0, data.length)) != -1) {
+                    buffer.write(data, 0, count);
+                    total += count;
+                }
             }
-            buffer.flush();
-            buffer.close();
-            inputStream.close();
+            if (call.isCancelled())
+                return;
             if (total == size) {
                 if (onFinished != null)
-                    handler.post(() -> onFinished.done(buffer, httpHeaders));
+                    call.post(() -> onFinished.done(buffer, httpHeaders));
             } else {
                 if (onError != null)
-                    onError.error("Error while loading data...", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR);
+                    call.post(() -> onError.error("Error while loading data...", responseEntity.getHeaders(), HttpStatus.INTERNAL_SERVER_ERROR));
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            downloadError(call, responseEntity, e);
         }
     }
 
+    /**
+     * Failure of reading body of download, it is not reported for cancelled call
+     */
+    private void downloadError(RestCall call, ResponseEntity<Resource> responseEntity, IOException e) {
+        if (onError != null && !call.isCancelled())
+            call.post(() -> onError.error(e.getMessage(), responseEntity.getHeaders(),
+                    call.isExpired() ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
     /**
      * Create instance RestClient
      */
-    public static <T extends Serializable> RestClientBuilder<T> build(Class<T> clazz) {
+    public static <T> RestClientBuilder<T> build(Class<T> clazz) {
         return new RestClientBuilder<>(clazz);
     }
+
+    /**
+     * Create instance RestClient for prepared request
+     */
+    public static <T> RestClientBuilder<T> build(PreparedRequest<T> preparedRequest) {
+        RestClientBuilder<T> builder = new RestClientBuilder<>(preparedRequest.getResponseType());
+        builder.preparedRequest = preparedRequest;
+        builder.queryUrl = preparedRequest.getUrl();
+        builder.restEngine = preparedRequest.getEngine();
+        for (Map.Entry<String, List<String>> entry : preparedRequest.getHeaders().entrySet()) {
+            builder.httpHeaders.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return builder;
+    }
 }
@@ -0,0 +1,338 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared dispatcher of requests with bounded concurrency overall and per host.
+ * Requests above limits wait in queue and run as soon as running ones finish.
+ * Adaptive dispatcher tunes limit of each host by AIMD: limit grows by one per round trip while latency stays
+ * near the lowest observed one and is cut when latency grows, so queue is kept in client instead of backend or link.
+ * Latency is round trip of network exchange, from sending request to response headers, of foreground requests;
+ * reading of body, backoff, cache hits and background transfers are not sampled.
+ * Waiting requests are started in order of priority, background ones take at most half of slots overall and per host.
+ */
+public final class RestDispatcher {
+    private static final int DEFAULT_MAX_REQUESTS = 64;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    private static final ThreadLocal<long[]> ROUND_TRIP = new ThreadLocal<>();
+    private static volatile RestDispatcher defaultDispatcher;
+
+    /**
+     * Network interceptor of engine's client, measures round trip of exchange for task running in this thread,
+     * warm-up requests are never measured
+     */
+    static final Interceptor INTERCEPTOR = chain -> {
+        long[] roundTrip = ROUND_TRIP.get();
+        if (roundTrip == null || chain.request().tag() == RestEngine.WARM_UP)
+            return chain.proceed(chain.request());
+        long start = System.nanoTime();
+        Response response = chain.proceed(chain.request());
+        roundTrip[0] = System.nanoTime() - start;
+        return response;
+    };
+
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final boolean adaptive;
+    private final Map<String, HostLimit> hostLimits = new HashMap<>();
+    private final ExecutorService executorService;
+    private final Map<Priority, Deque<Task>> readyTasks = new EnumMap<>(Priority.class);
+    private final Deque<Task> runningTasks = new ArrayDeque<>();
+    private long completedCount;
+
+    public RestDispatcher(int maxRequests, int maxRequestsPerHost) {
+        this(maxRequests, maxRequestsPerHost, false);
+    }
+
+    private RestDispatcher(int maxRequests, int maxRequestsPerHost, boolean adaptive) {
+        if (maxRequests < 1)
+            throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+        if (maxRequestsPerHost < 1)
+            throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.adaptive = adaptive;
+        for (Priority priority : Priority.values()) {
+            readyTasks.put(priority, new ArrayDeque<>());
+        }
+        this.executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new NamedThreadFactory());
+    }
+
+    /**
+     * Dispatcher with adaptive limit per host, it starts from quarter of maxRequestsPerHost and never exceeds it
+     */
+    public static RestDispatcher adaptive(int maxRequests, int maxRequestsPerHost) {
+        return new RestDispatcher(maxRequests, maxRequestsPerHost, true);
+    }
+
+    /**
+     * Dispatcher used by all clients if other one is not set, it has static limits of 64 requests and 5 per host.
+     * Adaptive limits are opt-in by {@link #setDefault(RestDispatcher)} with {@link #adaptive(int, int)}.
+     */
+    public static RestDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            synchronized (RestDispatcher.class) {
+                if (defaultDispatcher == null)
+                    defaultDispatcher = new RestDispatcher(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST);
+            }
+        }
+        return defaultDispatcher;
+    }
+
+    /**
+     * Replace default dispatcher, e.g. with other limits
+     */
+    public static void setDefault(RestDispatcher dispatcher) {
+        defaultDispatcher = dispatcher;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Current limit of concurrent requests to some host
+     */
+    public synchronized int getLimit(String host) {
+        return limitOf(host.toLowerCase());
+    }
+
+    /**
+     * Count of requests waiting for free slot
+     */
+    public synchronized int getQueuedCount() {
+        int count = 0;
+        for (Deque<Task> tasks : readyTasks.values()) {
+            count += tasks.size();
+        }
+        return count;
+    }
+
+    /**
+     * Count of requests with some priority waiting for free slot
+     */
+    public synchronized int getQueuedCount(Priority priority) {
+        return readyTasks.get(priority).size();
+    }
+
+    /**
+     * Count of requests running now
+     */
+    public synchronized int getRunningCount() {
+        return runningTasks.size();
+    }
+
+    /**
+     * Count of requests running now to some host
+     */
+    public synchronized int getRunningCount(String host) {
+        return runningCountForHost(host);
+    }
+
+    /**
+     * Count of requests finished since dispatcher was created
+     */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    void execute(String url, Runnable runnable) {
+        execute(url, Priority.NORMAL, runnable);
+    }
+
+    void execute(String url, Priority priority, Runnable runnable) {
+        synchronized (this) {
+            readyTasks.get(priority).add(new Task(hostOf(url), priority, runnable));
+        }
+        promote();
+    }
+
+    /**
+     * Task is done, latency is its last network round trip or -1 if it was not sampled
+     */
+    private void finished(Task task, long latency) {
+        synchronized (this) {
+            if (latency >= 0)
+                hostLimits.get(task.host).onSample(latency, runningCountForHost(task.host));
+            runningTasks.remove(task);
+            completedCount++;
+        }
+        promote();
+    }
+
+    private synchronized void promote() {
+        for (Map.Entry<Priority, Deque<Task>> entry : readyTasks.entrySet()) {
+            boolean background = entry.getKey() == Priority.BACKGROUND;
+            for (Iterator<Task> iterator = entry.getValue().iterator(); iterator.hasNext() && runningTasks.size() < maxRequests; ) {
+                if (background && backgroundCount(null) >= Math.max(1, maxRequests / 2))
+                    return;
+                Task task = iterator.next();
+                int limit = limitOf(task.host);
+                if (runningCountForHost(task.host) < limit && (!background || backgroundCount(task.host) < Math.max(1, limit / 2))) {
+                    iterator.remove();
+                    runningTasks.add(task);
+                    executorService.execute(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count of running background requests overall or to host if it is not null
+     */
+    private int backgroundCount(String host) {
+        int count = 0;
+        for (Task task : runningTasks) {
+            if (task.priority == Priority.BACKGROUND && (host == null || task.host.equals(host)))
+                count++;
+        }
+        return count;
+    }
+
+    private int limitOf(String host) {
+        if (!adaptive)
+            return maxRequestsPerHost;
+        HostLimit hostLimit = hostLimits.get(host);
+        if (hostLimit == null) {
+            hostLimit = new HostLimit(maxRequestsPerHost);
+            hostLimits.put(host, hostLimit);
+        }
+        return hostLimit.get();
+    }
+
+    private int runningCountForHost(String host) {
+        int count = 0;
+        for (Task task : runningTasks) {
+            if (task.host.equals(host))
+                count++;
+        }
+        return count;
+    }
+
+    static String hostOf(String url) {
+        if (url == null)
+            return "";
+        int start = url.indexOf("://");
+        start = start == -1 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) == -1)
+            end++;
+        String authority = url.substring(start, end);
+        int userInfo = authority.lastIndexOf('@');
+        if (userInfo != -1)
+            authority = authority.substring(userInfo + 1);
+        int port = authority.lastIndexOf(':');
+        if (port != -1 && authority.indexOf(']') < port)
+            authority = authority.substring(0, port);
+        return authority.toLowerCase();
+    }
+
+    /**
+     * Order of starting waiting requests: user-visible ones first, prefetches and downloads last
+     */
+    public enum Priority {
+        IMMEDIATE, NORMAL, BACKGROUND
+    }
+
+    private final class Task implements Runnable {
+        private final String host;
+        private final Priority priority;
+        private final Runnable runnable;
+
+        private Task(String host, Priority priority, Runnable runnable) {
+            this.host = host;
+            this.priority = priority;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            long[] roundTrip = adaptive && priority != Priority.BACKGROUND ? new long[]{-1} : null;
+            ROUND_TRIP.set(roundTrip);
+            try {
+                runnable.run();
+            } finally {
+                ROUND_TRIP.remove();
+                finished(this, roundTrip != null ? roundTrip[0] : -1);
+            }
+        }
+    }
+
+    /**
+     * AIMD limit of one host. Latency is compared with the lowest one of previous window of samples,
+     * so baseline follows changes of network instead of sticking to one lucky sample.
+     */
+    private static final class HostLimit {
+        private static final int WINDOW = 50;
+        private static final double TOLERANCE = 2.0;
+        private static final double BACKOFF = 0.75;
+
+        private final int maxLimit;
+        private double limit;
+        private long baseline = Long.MAX_VALUE;
+        private long windowMin = Long.MAX_VALUE;
+        private int samples;
+        private int sinceDecrease;
+
+        private HostLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            this.limit = Math.max(1, maxLimit / 4);
+        }
+
+        private int get() {
+            return (int) limit;
+        }
+
+        private void onSample(long latency, int inFlight) {
+            baseline = Math.min(baseline, latency);
+            windowMin = Math.min(windowMin, latency);
+            if (++samples % WINDOW == 0) {
+                baseline = windowMin;
+                windowMin = Long.MAX_VALUE;
+            }
+            sinceDecrease++;
+            if (latency > TOLERANCE * baseline) {
+                if (sinceDecrease >= limit) {
+                    limit = Math.max(1, limit * BACKOFF);
+                    sinceDecrease = 0;
+                }
+            } else if (inFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger number = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RestClient Dispatcher #" + number.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.github.sasergeev.restclient;
+
+import android.content.Context;
+import android.net.SSLSessionCache;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide HTTP engine: pooled OkHttp client with ready message converters of Spring's RestTemplate.
+ * Requests are executed by OkHttp directly, RestTemplate itself is not used.
+ * Engines are kept in registry by configuration, so all requests with same configuration reuse
+ * keep-alive connections, TLS sessions and converters instead of building them per call.
+ */
+public final class RestEngine {
+    /**
+     * Protocols of engine's connections: only HTTP/1.1 or HTTP/2 negotiated by ALPN with fallback to HTTP/1.1,
+     * where parallel requests to host share one multiplexed connection
+     */
+    public enum Transport {
+        HTTP_1_1, HTTP_2
+    }
+
+    private static final String DEFAULT_KEY = "default";
+    private static final String SSL_KEY = "ssl";
+    private static final String CACHE_DIRECTORY = "restclient";
+    private static final String DNS_CACHE_FILE = "restclient-dns";
+    private static final long DEFAULT_DNS_TTL_MINUTES = 10;
+    private static final int MAX_DERIVED_ENGINES = 16;
+    private static final Map<String, RestEngine> ENGINES = new ConcurrentHashMap<>();
+    /**
+     * Tag of warm-up requests, circuit breaker and latency sampling of dispatcher skip them
+     */
+    static final Object WARM_UP = new Object();
+    private static final Map<String, RestEngine> DERIVED_ENGINES = new LinkedHashMap<String, RestEngine>(MAX_DERIVED_ENGINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RestEngine> eldest) {
+            return size() > MAX_DERIVED_ENGINES;
+        }
+    };
+    private static volatile Cache cache;
+    private static volatile DnsCache dns;
+
+    private final String key;
+    private final OkHttpClient okHttpClient;
+    private final List<HttpMessageConverter<?>> messageConverters;
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private RestEngine(String key, OkHttpClient okHttpClient) {
+        this(key, okHttpClient, new CopyOnWriteArrayList<>(new RestTemplate().getMessageConverters()));
+    }
+
+    private RestEngine(String key, OkHttpClient okHttpClient, List<HttpMessageConverter<?>> messageConverters) {
+        this.key = key;
+        this.okHttpClient = okHttpClient;
+        if (!okHttpClient.networkInterceptors().contains(RestDispatcher.INTERCEPTOR))
+            okHttpClient.networkInterceptors().add(RestDispatcher.INTERCEPTOR);
+        if (!okHttpClient.interceptors().contains(CircuitBreaker.INTERCEPTOR))
+            okHttpClient.interceptors().add(CircuitBreaker.INTERCEPTOR);
+        if (!okHttpClient.interceptors().contains(RestCall.DEADLINE_INTERCEPTOR))
+            okHttpClient.interceptors().add(RestCall.DEADLINE_INTERCEPTOR);
+        if (cache != null)
+            okHttpClient.setCache(cache);
+        if (dns != null)
+            setDns(okHttpClient, dns);
+        this.messageConverters = messageConverters;
+    }
+
+    /**
+     * Engine for plain requests
+     */
+    public static RestEngine getDefault() {
+        return ENGINES.computeIfAbsent(DEFAULT_KEY, key -> new RestEngine(key, defaultClient()));
+    }
+
+    /**
+     * Engine for requests over ssl-connection with certificate, engines are kept by fingerprint of certificate.
+     * Its client is a copy of public {@link SSLHttpClient} of certificate sharing its SSL context,
+     * so interceptors of engine are not added to client used by application directly.
+     */
+    public static RestEngine ssl(InputStream x509Cert) {
+        byte[] certificate = SSLHttpClient.readCertificate(x509Cert);
+        return ENGINES.computeIfAbsent(SSL_KEY + ":" + SSLHttpClient.fingerprint(certificate),
+                key -> new RestEngine(key, SSLHttpClient.getInstance(certificate).clone()));
+    }
+
+    /**
+     * Engine with same configuration and own timeouts, it shares connection pool and caches with this one
+     */
+    public RestEngine withTimeouts(long connectTimeout, long readTimeout, long writeTimeout, TimeUnit unit) {
+        return derive("timeouts", unit.toMillis(connectTimeout) + "/" + unit.toMillis(readTimeout) + "/" + unit.toMillis(writeTimeout), client -> {
+            client.setConnectTimeout(connectTimeout, unit);
+            client.setReadTimeout(readTimeout, unit);
+            client.setWriteTimeout(writeTimeout, unit);
+        });
+    }
+
+    /**
+     * Engine with same configuration and own transport, it shares connection pool and caches with this one
+     */
+    public RestEngine withTransport(Transport transport) {
+        return derive("transport", transport.name(), client -> {
+            for (Interceptor interceptor : new ArrayList<>(client.interceptors())) {
+                if (interceptor instanceof ConnectionGate) {
+                    client.interceptors().remove(interceptor);
+                    client.networkInterceptors().remove(((ConnectionGate) interceptor).probe);
+                }
+            }
+            if (transport == Transport.HTTP_2) {
+                ConnectionGate gate = new ConnectionGate();
+                client.interceptors().add(gate);
+                client.networkInterceptors().add(gate.probe);
+                Dispatcher dispatcher = new Dispatcher();
+                dispatcher.setMaxRequestsPerHost(dispatcher.getMaxRequests());
+                client.setDispatcher(dispatcher);
+                client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+            } else {
+                client.setProtocols(Collections.singletonList(Protocol.HTTP_1_1));
+            }
+        });
+    }
+
+    /**
+     * Protocol of connection to origin of url or null if it is unknown, it is tracked only by HTTP/2 transport
+     */
+    public Protocol getProtocol(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(originOf(url));
+        for (Interceptor interceptor : okHttpClient.interceptors()) {
+            if (interceptor instanceof ConnectionGate && httpUrl != null)
+                return ((ConnectionGate) interceptor).getProtocol(httpUrl);
+        }
+        return null;
+    }
+
+    /**
+     * Engine derived from this one by one setting, it shares message converters with this one and is kept by base key
+     * and all its settings among last {@link #MAX_DERIVED_ENGINES} used ones, so distinct settings per call don't pile up
+     */
+    private RestEngine derive(String setting, String value, Consumer<OkHttpClient> configure) {
+        String[] parts = key.split("\\|");
+        Set<String> settings = new TreeSet<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (!parts[i].startsWith(setting + "="))
+                settings.add(parts[i]);
+        }
+        settings.add(setting + "=" + value);
+        StringBuilder derivedKey = new StringBuilder(parts[0]);
+        for (String part : settings) {
+            derivedKey.append('|').append(part);
+        }
+        synchronized (DERIVED_ENGINES) {
+            return DERIVED_ENGINES.computeIfAbsent(derivedKey.toString(), key -> {
+                OkHttpClient client = okHttpClient.clone();
+                configure.accept(client);
+                return new RestEngine(key, client, messageConverters);
+            });
+        }
+    }
+
+    /**
+     * Install disk HTTP cache in cache dir of application for all engines
+     */
+    public static void installCache(Context context, long maxSize) {
+        installCache(new File(context.getCacheDir(), CACHE_DIRECTORY), maxSize);
+    }
+
+    /**
+     * Install disk HTTP cache with LRU eviction for all engines. Responses are cached as Cache-Control allows,
+     * stale ones are revalidated with If-None-Match/If-Modified-Since and 304 is served from disk.
+     */
+    public static synchronized void installCache(File directory, long maxSize) {
+        Cache current = cache;
+        if (current != null && current.getDirectory().equals(directory) && current.getMaxSize() == maxSize)
+            return;
+        cache = new Cache(directory, maxSize);
+        for (RestEngine engine : engines()) {
+            engine.okHttpClient.setCache(cache);
+        }
+    }
+
+    /**
+     * Keep DNS results and TLS sessions on disk in cache dir of application, so first request after restart
+     * of process skips DNS lookup and resumes TLS session instead of full handshake
+     */
+    public static void installSessionCache(Context context) {
+        installSessionCache(new SSLSessionCache(context), new File(context.getCacheDir(), DNS_CACHE_FILE),
+                DEFAULT_DNS_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Keep TLS sessions in own cache and DNS results in file for TTL, expired result is used only if lookup fails
+     */
+    public static synchronized void installSessionCache(SSLSessionCache sessionCache, File dnsFile, long dnsTtl, TimeUnit unit) {
+        SSLHttpClient.installSessionCache(sessionCache);
+        dns = new DnsCache(dnsFile, unit.toMillis(dnsTtl));
+        for (RestEngine engine : engines()) {
+            setDns(engine.okHttpClient, dns);
+        }
+    }
+
+    /**
+     * Resolve hosts of client by DNS cache, it replaces previous one with its interceptors
+     */
+    private static void setDns(OkHttpClient client, DnsCache dnsCache) {
+        for (Interceptor interceptor : new ArrayList<>(client.interceptors())) {
+            if (interceptor instanceof DnsCache) {
+                client.interceptors().remove(interceptor);
+                client.networkInterceptors().remove(((DnsCache) interceptor).probe);
+            }
+        }
+        client.setDns(dnsCache);
+        client.interceptors().add(dnsCache);
+        client.networkInterceptors().add(dnsCache.probe);
+    }
+
+    /**
+     * Disk HTTP cache of engines or null if it is not installed
+     */
+    public static Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Evict all engines from registry, next requests will build new ones
+     */
+    public static void reset() {
+        ENGINES.clear();
+        synchronized (DERIVED_ENGINES) {
+            DERIVED_ENGINES.clear();
+        }
+    }
+
+    private static List<RestEngine> engines() {
+        List<RestEngine> engines = new ArrayList<>(ENGINES.values());
+        synchronized (DERIVED_ENGINES) {
+            engines.addAll(DERIVED_ENGINES.values());
+        }
+        return engines;
+    }
+
+    /**
+     * Open connection to origin of url in background and park it in pool, so first request skips DNS, TCP and TLS.
+     * Its HEAD request is not recorded by circuit breaker and is not a latency sample of dispatcher.
+     * Message converters are primed for response types in common pool, e.g. Jackson builds its deserializers,
+     * this work takes no slot of dispatcher and is not taken for latency of host.
+     */
+    public void preconnect(String url, Class<?>... responseTypes) {
+        Request request = new Request.Builder().url(originOf(url)).head().tag(WARM_UP).build();
+        okHttpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                response.body().close();
+            }
+        });
+        if (responseTypes.length > 0)
+            CompletableFuture.runAsync(() -> prime(responseTypes));
+    }
+
+    private void prime(Class<?>... responseTypes) {
+        for (HttpMessageConverter<?> converter : messageConverters) {
+            for (Class<?> responseType : responseTypes) {
+                converter.canRead(responseType, MediaType.APPLICATION_JSON);
+                converter.canWrite(responseType, MediaType.APPLICATION_JSON);
+            }
+        }
+    }
+
+    /**
+     * Scheme and authority of url, URI template variables of path are dropped
+     */
+    private static String originOf(String url) {
+        int start = url.indexOf("://");
+        int end = start == -1 ? 0 : start + 3;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) == -1)
+            end++;
+        return url.substring(0, end) + "/";
+    }
+
+    public OkHttpClient getHttpClient() {
+        return okHttpClient;
+    }
+
+    /**
+     * Converters reading and writing bodies of requests, default ones of RestTemplate, e.g. Jackson if it is present.
+     * List can be changed, e.g. to add own converter, before requests are made.
+     */
+    public List<HttpMessageConverter<?>> getMessageConverters() {
+        return messageConverters;
+    }
+
+    <S> ResponseEntity<S> exchange(String url,
+                                   HttpMethod httpMethod,
+                                   HttpEntity<?> httpEntity,
+                                   Class<S> responseType,
+                                   Object... params) throws RestClientException {
+        return exchange(UrlTemplate.parse(url).expand(params), httpMethod, httpEntity, responseType);
+    }
+
+    <S> ResponseEntity<S> exchange(URI uri,
+                                   HttpMethod httpMethod,
+                                   HttpEntity<?> httpEntity,
+                                   Class<S> responseType) throws RestClientException {
+        return AsyncExchange.execute(okHttpClient, getMessageConverters(), RestCall.current(), uri, httpMethod, httpEntity, responseType);
+    }
+
+    /**
+     * Enqueue request to OkHttp dispatcher, callback is called on its thread
+     */
+    <S> Call enqueue(String url,
+                     HttpMethod httpMethod,
+                     HttpEntity<?> httpEntity,
+                     Class<S> responseType,
+                     AsyncExchange.ExchangeCallback<S> callback,
+                     Object... params) {
+        return enqueue(UrlTemplate.parse(url).expand(params), httpMethod, httpEntity, responseType, callback);
+    }
+
+    <S> Call enqueue(URI uri,
+                     HttpMethod httpMethod,
+                     HttpEntity<?> httpEntity,
+                     Class<S> responseType,
+                     AsyncExchange.ExchangeCallback<S> callback) {
+        return AsyncExchange.enqueue(okHttpClient, getMessageConverters(), RestCall.current(), uri, httpMethod, httpEntity, responseType, callback);
+    }
+
+    /**
+     * Join identical request in flight or start it by request supplier
+     */
+    <S> CompletableFuture<ResponseEntity<S>> coalesce(String key, RestCall waiter, Supplier<CompletableFuture<ResponseEntity<S>>> request) {
+        return singleFlight.join(key, waiter, request);
+    }
+
+    private static OkHttpClient defaultClient() {
+        OkHttpClient okHttpClient = new OkHttpClient();
+        okHttpClient.setConnectTimeout(120, TimeUnit.SECONDS);
+        okHttpClient.setWriteTimeout(120, TimeUnit.SECONDS);
+        okHttpClient.setReadTimeout(120, TimeUnit.SECONDS);
+        okHttpClient.setSslSocketFactory(SSLHttpClient.defaultContext().getSocketFactory());
+        return okHttpClient;
+    }
+}
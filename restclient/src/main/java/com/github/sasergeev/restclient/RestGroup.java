@@ -0,0 +1,222 @@
+package com.github.sasergeev.restclient;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group of concurrent requests with one deadline for all of them.
+ * When deadline expires or critical request fails the rest of requests are cancelled,
+ * result of group is delivered once when all requests are done.
+ * Futures of {@link RestClientBuilder} abort their network calls when they are cancelled, any other future,
+ * e.g. one made by thenApply(), only stops waiting, so add it with its request to abort the call as well.
+ */
+public final class RestGroup implements Cancellable {
+    private final List<Member> members = new ArrayList<>();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+    private final ScheduledFuture<?> timeout;
+    private State state = State.RUNNING;
+    private boolean sealed;
+    private int pending;
+
+    /**
+     * Start group, deadline is counted from now
+     */
+    public RestGroup(long deadline, TimeUnit unit) {
+        this.timeout = RestTimer.schedule(() -> finish(State.TIMED_OUT), deadline, unit);
+    }
+
+    /**
+     * Add critical request, its failure cancels whole group
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> add(CompletableFuture<ResponseEntity<T>> future) {
+        return add(null, future, true);
+    }
+
+    /**
+     * Add critical request with its builder or call, they are cancelled with the future
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> add(Cancellable request, CompletableFuture<ResponseEntity<T>> future) {
+        return add(request, future, true);
+    }
+
+    /**
+     * Add optional request, its failure is only reported in result of group
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> addOptional(CompletableFuture<ResponseEntity<T>> future) {
+        return add(null, future, false);
+    }
+
+    /**
+     * Add optional request with its builder or call, they are cancelled with the future
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> addOptional(Cancellable request, CompletableFuture<ResponseEntity<T>> future) {
+        return add(request, future, false);
+    }
+
+    /**
+     * Close group for new requests, returned future is completed on worker thread when all requests are done
+     */
+    public CompletableFuture<Result> result() {
+        synchronized (this) {
+            sealed = true;
+        }
+        complete();
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        finish(State.CANCELLED);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> add(Cancellable request, CompletableFuture<ResponseEntity<T>> future, boolean critical) {
+        Member member = new Member(request, future, critical);
+        boolean running;
+        synchronized (this) {
+            if (sealed)
+                throw new IllegalStateException("Group is already closed for new requests");
+            members.add(member);
+            pending++;
+            running = state == State.RUNNING;
+        }
+        if (!running)
+            member.cancel();
+        future.whenComplete((responseEntity, throwable) -> {
+            if (critical && throwable != null && !(unwrap(throwable) instanceof CancellationException))
+                finish(State.FAILED);
+            synchronized (this) {
+                pending--;
+            }
+            complete();
+        });
+        return future;
+    }
+
+    private void finish(State state) {
+        List<Member> members;
+        synchronized (this) {
+            if (this.state != State.RUNNING)
+                return;
+            this.state = state;
+            members = new ArrayList<>(this.members);
+        }
+        timeout.cancel(false);
+        for (Member member : members) {
+            member.cancel();
+        }
+        complete();
+    }
+
+    private void complete() {
+        Result groupResult;
+        synchronized (this) {
+            if (!sealed || pending > 0 || result.isDone())
+                return;
+            if (state == State.RUNNING)
+                state = State.COMPLETED;
+            groupResult = new Result(state, new ArrayList<>(members));
+        }
+        timeout.cancel(false);
+        result.complete(groupResult);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED, TIMED_OUT, CANCELLED
+    }
+
+    private static final class Member {
+        private final Cancellable request;
+        private final CompletableFuture<? extends ResponseEntity<?>> future;
+        private final boolean critical;
+
+        private Member(Cancellable request, CompletableFuture<? extends ResponseEntity<?>> future, boolean critical) {
+            this.request = request;
+            this.future = future;
+            this.critical = critical;
+        }
+
+        private void cancel() {
+            future.cancel(false);
+            if (request != null)
+                request.cancel();
+        }
+    }
+
+    /**
+     * Combined result of group: final state and outcome of every request
+     */
+    public static final class Result {
+        private final State state;
+        private final List<Member> members;
+
+        private Result(State state, List<Member> members) {
+            this.state = state;
+            this.members = Collections.unmodifiableList(members);
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * True if group is completed and all critical requests are successful
+         */
+        public boolean isSuccessful() {
+            if (state != State.COMPLETED)
+                return false;
+            for (Member member : members) {
+                if (member.critical && member.future.isCompletedExceptionally())
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Response of request or null if it failed or was cancelled
+         */
+        public <T> ResponseEntity<T> getResponse(CompletableFuture<ResponseEntity<T>> future) {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        /**
+         * Error of request, CancellationException if it was cancelled, or null if it is successful
+         */
+        public Throwable getError(CompletableFuture<?> future) {
+            if (!future.isCompletedExceptionally())
+                return null;
+            try {
+                future.join();
+                return null;
+            } catch (CancellationException e) {
+                return e;
+            } catch (CompletionException e) {
+                return unwrap(e);
+            }
+        }
+
+        public int getCount() {
+            return members.size();
+        }
+    }
+}
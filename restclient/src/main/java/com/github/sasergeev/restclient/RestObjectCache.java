@@ -0,0 +1,147 @@
+package com.github.sasergeev.restclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory LRU cache of deserialized responses of GET-requests, keyed by response type, expanded URI and headers.
+ * Entries expire by TTL but stay for stale-while-revalidate until they are evicted
+ * when count of entries or their size exceeds budget.
+ * Size of entry is size of response body by Content-Length, so it is approximate.
+ */
+public final class RestObjectCache {
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_ENTRY_SIZE = 1024;
+    private static volatile RestObjectCache defaultCache;
+
+    private final int maxEntries;
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    public RestObjectCache(int maxEntries, long maxSize) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries < 1: " + maxEntries);
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize < 1: " + maxSize);
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Cache used by all clients if other one is not set
+     */
+    public static RestObjectCache getDefault() {
+        if (defaultCache == null) {
+            synchronized (RestObjectCache.class) {
+                if (defaultCache == null)
+                    defaultCache = new RestObjectCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_SIZE);
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Replace default cache, e.g. with other budget
+     */
+    public static void setDefault(RestObjectCache cache) {
+        defaultCache = cache;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Approximate size of cached responses in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void evictAll() {
+        entries.clear();
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> ResponseEntity<T> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt - System.nanoTime() <= 0) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return (ResponseEntity<T>) entry.responseEntity;
+    }
+
+    /**
+     * Response even if its TTL is expired
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> ResponseEntity<T> getStale(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? (ResponseEntity<T>) entry.responseEntity : null;
+    }
+
+    synchronized void put(String key, ResponseEntity<?> responseEntity, long ttl, TimeUnit unit) {
+        long contentLength = responseEntity.getHeaders().getContentLength();
+        Entry entry = new Entry(responseEntity, contentLength > 0 ? contentLength : DEFAULT_ENTRY_SIZE,
+                System.nanoTime() + unit.toNanos(ttl));
+        if (entry.size > maxSize)
+            return;
+        remove(key);
+        entries.put(key, entry);
+        size += entry.size;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || size > maxSize) && iterator.hasNext()) {
+            size -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            size -= entry.size;
+    }
+
+    static String key(Class<?> responseType, URI uri, HttpHeaders headers) {
+        StringBuilder key = new StringBuilder(responseType.getName()).append(' ').append(uri);
+        for (Map.Entry<String, List<String>> header : new TreeMap<>(headers).entrySet()) {
+            key.append('\n').append(header.getKey().toLowerCase()).append(": ").append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    private static final class Entry {
+        private final ResponseEntity<?> responseEntity;
+        private final long size;
+        private final long expiresAt;
+
+        private Entry(ResponseEntity<?> responseEntity, long size, long expiresAt) {
+            this.responseEntity = responseEntity;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.sasergeev.restclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Immutable result of one request, passed from worker thread to callbacks on main thread
+ */
+final class RestResult<T> {
+    private final HttpStatus status;
+    private final HttpHeaders headers;
+    private final T body;
+    private final String message;
+
+    private RestResult(HttpStatus status, HttpHeaders headers, T body, String message) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.message = message;
+    }
+
+    static <T> RestResult<T> of(ResponseEntity<T> responseEntity) {
+        return new RestResult<>(responseEntity.getStatusCode(), responseEntity.getHeaders(), responseEntity.getBody(), null);
+    }
+
+    static <T> RestResult<T> error(String message, HttpHeaders headers, HttpStatus status) {
+        return new RestResult<>(status, headers, null, message);
+    }
+
+    HttpStatus getStatus() {
+        return status;
+    }
+
+    HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    T getBody() {
+        return body;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    boolean isSuccessful() {
+        return status.is2xxSuccessful();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.sasergeev.restclient;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Group of requests cancelled together, e.g. all requests of Activity or Fragment.
+ * Scope bound to LifecycleOwner is cancelled on ON_DESTROY: requests, downloads and callbacks
+ * not delivered yet are dropped, requests started after it are cancelled at once.
+ */
+public final class RestScope implements Cancellable {
+    private static final Map<LifecycleOwner, RestScope> SCOPES = new WeakHashMap<>();
+
+    private final Set<RestCall> calls = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public RestScope() {
+    }
+
+    /**
+     * Scope of LifecycleOwner, the same one for all calls until owner is destroyed. Call it on main thread.
+     */
+    public static RestScope of(LifecycleOwner owner) {
+        synchronized (SCOPES) {
+            RestScope scope = SCOPES.get(owner);
+            if (scope != null)
+                return scope;
+            scope = new RestScope();
+            if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+                scope.cancel();
+                return scope;
+            }
+            SCOPES.put(owner, scope);
+            owner.getLifecycle().addObserver(scope.new LifecycleObserver());
+            return scope;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        for (RestCall call : calls) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Count of requests started in scope and not finished yet
+     */
+    public int getActiveCount() {
+        return calls.size();
+    }
+
+    void join(RestCall call) {
+        calls.add(call);
+        call.whenFinished(() -> calls.remove(call));
+        if (cancelled)
+            call.cancel();
+    }
+
+    private final class LifecycleObserver implements LifecycleEventObserver {
+        @Override
+        public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+            if (event != Lifecycle.Event.ON_DESTROY)
+                return;
+            source.getLifecycle().removeObserver(this);
+            synchronized (SCOPES) {
+                SCOPES.remove(source);
+            }
+            cancel();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.sasergeev.restclient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared timer for deadlines and delayed attempts, tasks must be short and hand over real work to dispatcher
+ */
+final class RestTimer {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RestClient Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RestTimer() {
+    }
+
+    static ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return TIMER.schedule(runnable, delay, unit);
+    }
+}
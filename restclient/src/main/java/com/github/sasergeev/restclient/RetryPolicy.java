@@ -0,0 +1,224 @@
+package com.github.sasergeev.restclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Retry of failed requests with exponential backoff and full jitter.
+ * Network errors except open circuit and 408, 429, 502, 503, 504 are retried for idempotent methods, POST and PATCH only with idempotency key.
+ * Retry-After of 429 and 503 responses is respected.
+ * All policies share one retry budget: each request adds part of token, each retry takes whole one,
+ * so during outage retries are limited by share of requests instead of multiplying load.
+ */
+public final class RetryPolicy {
+    private static final double DEFAULT_BUDGET_RATIO = 0.1;
+    private static final int DEFAULT_BUDGET_MAX_TOKENS = 10;
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final RetryBudget BUDGET = new RetryBudget(DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_MAX_TOKENS);
+    private static volatile RetryPolicy defaultPolicy;
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public RetryPolicy(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+        if (initialBackoff < 0 || maxBackoff < initialBackoff)
+            throw new IllegalArgumentException("Wrong backoff: " + initialBackoff + ".." + maxBackoff);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = unit.toMillis(initialBackoff);
+        this.maxBackoffMillis = unit.toMillis(maxBackoff);
+    }
+
+    /**
+     * Policy used by clients with retry enabled if other one is not set: 2 retries, backoff from 200 ms up to 5 s
+     */
+    public static RetryPolicy getDefault() {
+        if (defaultPolicy == null) {
+            synchronized (RetryPolicy.class) {
+                if (defaultPolicy == null)
+                    defaultPolicy = new RetryPolicy(2, 200, 5000, TimeUnit.MILLISECONDS);
+            }
+        }
+        return defaultPolicy;
+    }
+
+    public static void setDefault(RetryPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Configure global retry budget: share of requests which can be retried and burst of retries
+     */
+    public static void setBudget(double ratio, int maxTokens) {
+        BUDGET.configure(ratio, maxTokens);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Method can be retried without side effects or request carries idempotency key
+     */
+    static boolean isRetryable(HttpMethod httpMethod, boolean idempotencyKey) {
+        return httpMethod != HttpMethod.POST && httpMethod != HttpMethod.PATCH || idempotencyKey;
+    }
+
+    static boolean isRetryable(RestClientException exception) {
+        if (exception instanceof ResourceAccessException)
+            return !(exception.getCause() instanceof CircuitBreaker.OpenException);
+        if (exception instanceof HttpStatusCodeException) {
+            HttpStatus status = ((HttpStatusCodeException) exception).getStatusCode();
+            return status == HttpStatus.REQUEST_TIMEOUT || status == HttpStatus.TOO_MANY_REQUESTS
+                    || status == HttpStatus.BAD_GATEWAY || status == HttpStatus.SERVICE_UNAVAILABLE
+                    || status == HttpStatus.GATEWAY_TIMEOUT;
+        }
+        return false;
+    }
+
+    /**
+     * Count new request in retry budget
+     */
+    void onRequest() {
+        BUDGET.deposit();
+    }
+
+    /**
+     * Delay before retry in millis or -1 if request must not be retried after this attempt.
+     * Retry-After of 429 and 503 is respected, request is not retried if server asks to wait longer than max backoff.
+     */
+    long retryDelay(int attempt, RestClientException exception) {
+        if (attempt >= maxRetries || !isRetryable(exception))
+            return -1;
+        long retryAfter = retryAfter(exception);
+        if (retryAfter > maxBackoffMillis || !BUDGET.withdraw())
+            return -1;
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 30));
+        return Math.max(retryAfter, ThreadLocalRandom.current().nextLong(backoff + 1));
+    }
+
+    /**
+     * Blocking exchange with retries started in current task of dispatcher, its outcome is passed to handler
+     * in thread of last attempt. Next attempt is submitted to dispatcher again after backoff,
+     * so waiting for retry doesn't hold slot of dispatcher. Stops if call is cancelled or its deadline passes.
+     */
+    <S> void execute(RestDispatcher dispatcher,
+                     String url,
+                     RestDispatcher.Priority priority,
+                     RestCall call,
+                     Supplier<S> exchange,
+                     Consumer<Supplier<S>> handler) {
+        onRequest();
+        attempt(dispatcher, url, priority, call, exchange, handler, 0);
+    }
+
+    private <S> void attempt(RestDispatcher dispatcher,
+                             String url,
+                             RestDispatcher.Priority priority,
+                             RestCall call,
+                             Supplier<S> exchange,
+                             Consumer<Supplier<S>> handler,
+                             int attempt) {
+        S result;
+        try {
+            result = exchange.get();
+        } catch (RestClientException e) {
+            long delay = isStopped(call) ? -1 : retryDelay(attempt, e);
+            if (delay < 0) {
+                handler.accept(() -> {
+                    throw e;
+                });
+                return;
+            }
+            RestTimer.schedule(() -> dispatcher.execute(url, priority, () -> call.run(() -> {
+                if (isStopped(call))
+                    handler.accept(() -> {
+                        throw e;
+                    });
+                else
+                    attempt(dispatcher, url, priority, call, exchange, handler, attempt + 1);
+            })), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        handler.accept(() -> result);
+    }
+
+    /**
+     * Cancelled call or call with passed deadline is not retried
+     */
+    private static boolean isStopped(RestCall call) {
+        return call.isCancelled() || call.isExpired();
+    }
+
+    /**
+     * Delay asked by Retry-After header of 429 or 503 response in millis, 0 if there is none.
+     * Header is either delay in seconds or HTTP date.
+     */
+    static long retryAfter(RestClientException exception) {
+        if (!(exception instanceof HttpStatusCodeException))
+            return 0;
+        HttpStatusCodeException statusException = (HttpStatusCodeException) exception;
+        HttpStatus status = statusException.getStatusCode();
+        HttpHeaders headers = statusException.getResponseHeaders();
+        String value = headers != null ? headers.getFirst(RETRY_AFTER) : null;
+        if (value == null || status != HttpStatus.TOO_MANY_REQUESTS && status != HttpStatus.SERVICE_UNAVAILABLE)
+            return 0;
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+            } catch (ParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    private static final class RetryBudget {
+        private double ratio;
+        private int maxTokens;
+        private double tokens;
+
+        private RetryBudget(double ratio, int maxTokens) {
+            configure(ratio, maxTokens);
+        }
+
+        private synchronized void configure(double ratio, int maxTokens) {
+            if (ratio < 0 || maxTokens < 1)
+                throw new IllegalArgumentException("Wrong retry budget: " + ratio + ", " + maxTokens);
+            this.ratio = ratio;
+            this.maxTokens = maxTokens;
+            this.tokens = maxTokens;
+        }
+
+        private synchronized void deposit() {
+            tokens = Math.min(maxTokens, tokens + ratio);
+        }
+
+        private synchronized boolean withdraw() {
+            if (tokens < 1)
+                return false;
+            tokens--;
+            return true;
+        }
+    }
+}
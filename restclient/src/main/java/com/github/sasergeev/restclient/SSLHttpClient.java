@@ -1,29 +1,121 @@
 package com.github.sasergeev.restclient;
 
+import android.net.SSLSessionCache;
+
 import com.squareup.okhttp.OkHttpClient;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.KeyManagementException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import java.security.MessageDigest;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 
+/**
+ * Client trusting one X.509 certificate. Clients and their SSL contexts are kept in registry by SHA-256 fingerprint
+ * of certificate, so each certificate gets own client and reconnects resume TLS sessions from session cache of its context.
+ */
 public class SSLHttpClient extends OkHttpClient {
-    private static SSLHttpClient instance;
+    private static final int SESSION_CACHE_SIZE = 64;
+    private static final int SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(12);
+    private static final Map<String, SSLHttpClient> CLIENTS = new ConcurrentHashMap<>();
+    private static volatile SSLContext defaultContext;
+    private static volatile SSLSessionCache sessionCache;
+
+    private final String fingerprint;
+    private final SSLContext sslContext;
 
-    private SSLHttpClient(InputStream x509Cert) {
+    private SSLHttpClient(String fingerprint, SSLContext sslContext) {
         super();
+        this.fingerprint = fingerprint;
+        this.sslContext = sslContext;
+        this.setConnectTimeout(120, TimeUnit.SECONDS);
+        this.setWriteTimeout(120, TimeUnit.SECONDS);
+        this.setReadTimeout(120, TimeUnit.SECONDS);
+        this.setSslSocketFactory(sslContext.getSocketFactory());
+    }
+
+    /**
+     * Client for certificate, stream is read and closed
+     */
+    public static SSLHttpClient getInstance(InputStream x509Cert) {
+        return getInstance(readCertificate(x509Cert));
+    }
+
+    static SSLHttpClient getInstance(byte[] x509Cert) {
+        return CLIENTS.computeIfAbsent(fingerprint(x509Cert), key -> new SSLHttpClient(key, trustingContext(x509Cert)));
+    }
+
+    /**
+     * SHA-256 fingerprint of certificate this client trusts
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * SSL context with system trust store for clients without own certificate, with same session cache settings
+     */
+    static SSLContext defaultContext() {
+        if (defaultContext == null) {
+            synchronized (SSLHttpClient.class) {
+                if (defaultContext == null)
+                    defaultContext = initContext(null);
+            }
+        }
+        return defaultContext;
+    }
+
+    /**
+     * Keep TLS sessions of all contexts in persistent cache, so they are resumed after restart of process
+     */
+    static synchronized void installSessionCache(SSLSessionCache cache) {
+        sessionCache = cache;
+        SSLSessionCache.install(cache, defaultContext());
+        for (SSLHttpClient client : CLIENTS.values()) {
+            SSLSessionCache.install(cache, client.sslContext);
+        }
+    }
+
+    static byte[] readCertificate(InputStream x509Cert) {
+        try (InputStream input = x509Cert) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read certificate", e);
+        }
+    }
+
+    static String fingerprint(byte[] x509Cert) {
         try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            byte[] encoded = CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(x509Cert)).getEncoded();
+            StringBuilder builder = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(encoded)) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid X.509 certificate", e);
+        }
+    }
 
-            Certificate ca = cf.generateCertificate(x509Cert);
-            x509Cert.close();
+    private static SSLContext trustingContext(byte[] x509Cert) {
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            Certificate ca = cf.generateCertificate(new ByteArrayInputStream(x509Cert));
 
             String keyStoreType = KeyStore.getDefaultType();
             KeyStore keyStore = KeyStore.getInstance(keyStoreType);
@@ -33,24 +125,27 @@ public class SSLHttpClient extends OkHttpClient {
             String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
             TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
             tmf.init(keyStore);
-
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, tmf.getTrustManagers(), null);
-
-            this.setConnectTimeout(120, TimeUnit.SECONDS);
-            this.setWriteTimeout(120, TimeUnit.SECONDS);
-            this.setReadTimeout(120, TimeUnit.SECONDS);
-
-            this.setSslSocketFactory(sslContext.getSocketFactory());
-
-        } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException | KeyManagementException e) {
-            e.printStackTrace();
+            return initContext(tmf);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalArgumentException("Invalid X.509 certificate", e);
         }
     }
 
-    public static SSLHttpClient getInstance(InputStream x509Cert) {
-        if (instance == null)
-            instance = new SSLHttpClient(x509Cert);
-        return instance;
+    private static SSLContext initContext(TrustManagerFactory tmf) {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, tmf != null ? tmf.getTrustManagers() : null, null);
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            }
+            SSLSessionCache cache = sessionCache;
+            if (cache != null)
+                SSLSessionCache.install(cache, sslContext);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("TLS is not available", e);
+        }
     }
 }
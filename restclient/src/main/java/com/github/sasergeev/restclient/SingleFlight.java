@@ -0,0 +1,78 @@
+package com.github.sasergeev.restclient;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Identical requests in flight share one network call: first one starts it, next ones wait for its result.
+ * Network call is cancelled when all waiting calls are cancelled.
+ */
+final class SingleFlight {
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    <S> CompletableFuture<ResponseEntity<S>> join(String key, RestCall waiter, Supplier<CompletableFuture<ResponseEntity<S>>> request) {
+        Flight flight;
+        boolean leader = false;
+        synchronized (this) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key);
+                flights.put(key, flight);
+                leader = true;
+            }
+            flight.waiters++;
+        }
+        if (leader)
+            start(flight, request.get());
+        Flight joined = flight;
+        waiter.whenFinished(() -> leave(joined));
+        return (CompletableFuture<ResponseEntity<S>>) (CompletableFuture<?>) flight.result.thenApply(responseEntity -> responseEntity);
+    }
+
+    private void start(Flight flight, CompletableFuture<? extends ResponseEntity<?>> network) {
+        boolean cancelled;
+        synchronized (this) {
+            flight.network = network;
+            cancelled = flight.waiters == 0;
+        }
+        if (cancelled)
+            network.cancel(false);
+        network.whenComplete((responseEntity, throwable) -> {
+            synchronized (this) {
+                flights.remove(flight.key, flight);
+            }
+            if (throwable != null)
+                flight.result.completeExceptionally(throwable);
+            else
+                flight.result.complete(responseEntity);
+        });
+    }
+
+    private void leave(Flight flight) {
+        CompletableFuture<?> network;
+        synchronized (this) {
+            if (--flight.waiters > 0 || flight.result.isDone())
+                return;
+            flights.remove(flight.key, flight);
+            network = flight.network;
+        }
+        if (network != null)
+            network.cancel(false);
+    }
+
+    private static final class Flight {
+        private final String key;
+        private final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+        private CompletableFuture<?> network;
+        private int waiters;
+
+        private Flight(String key) {
+            this.key = key;
+        }
+    }
+}
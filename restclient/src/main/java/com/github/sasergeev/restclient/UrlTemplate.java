@@ -0,0 +1,169 @@
+package com.github.sasergeev.restclient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URI template like "api/v1/{id}?page={page}" parsed once into literal and variable parts,
+ * so expanding it is just binding values and encoding them for their part of URI.
+ * Encoding is the same as of Spring's UriTemplate, e.g. '+' is encoded in query so it is not read as space.
+ */
+final class UrlTemplate {
+    private static final int AUTHORITY = 0;
+    private static final int PATH = 1;
+    private static final int QUERY = 2;
+    private static final int FRAGMENT = 3;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String template;
+    private final List<Part> parts;
+    private final List<String> variableNames;
+
+    private UrlTemplate(String template, List<Part> parts, List<String> variableNames) {
+        this.template = template;
+        this.parts = parts;
+        this.variableNames = variableNames;
+    }
+
+    static UrlTemplate parse(String template) {
+        List<Part> parts = new ArrayList<>();
+        List<String> variableNames = new ArrayList<>();
+        int component = template.contains("://") ? AUTHORITY : PATH;
+        int schemeEnd = template.indexOf("://");
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '{') {
+                int end = template.indexOf('}', i);
+                if (end == -1)
+                    throw new IllegalArgumentException("Unclosed variable in URI template: " + template);
+                if (literal.length() > 0) {
+                    parts.add(new Part(literal.toString(), null, component));
+                    literal.setLength(0);
+                }
+                String name = template.substring(i + 1, end);
+                int colon = name.indexOf(':');
+                if (colon != -1)
+                    name = name.substring(0, colon);
+                name = name.trim();
+                parts.add(new Part(null, name, component));
+                variableNames.add(name);
+                i = end + 1;
+                continue;
+            }
+            if (component == AUTHORITY && c == '/' && i > schemeEnd + 2)
+                component = PATH;
+            if (component < QUERY && c == '?')
+                component = QUERY;
+            else if (component < FRAGMENT && c == '#')
+                component = FRAGMENT;
+            literal.append(c);
+            i++;
+        }
+        if (literal.length() > 0)
+            parts.add(new Part(literal.toString(), null, component));
+        return new UrlTemplate(template, Collections.unmodifiableList(parts), Collections.unmodifiableList(variableNames));
+    }
+
+    String getTemplate() {
+        return template;
+    }
+
+    List<String> getVariableNames() {
+        return variableNames;
+    }
+
+    /**
+     * Expand template with values in order of variables
+     */
+    URI expand(Object... values) {
+        StringBuilder builder = new StringBuilder(template.length() + 16 * values.length);
+        int index = 0;
+        for (Part part : parts) {
+            if (part.literal != null) {
+                encode(builder, part.literal, part.component, false);
+            } else {
+                if (index >= values.length)
+                    throw new IllegalArgumentException("Not enough variable values available to expand '" + part.name + "'");
+                Object value = values[index++];
+                encode(builder, value != null ? value.toString() : "", part.component, true);
+            }
+        }
+        return URI.create(builder.toString());
+    }
+
+    /**
+     * Expand template with values by names of variables
+     */
+    URI expand(Map<String, ?> values) {
+        StringBuilder builder = new StringBuilder(template.length() + 16 * values.size());
+        for (Part part : parts) {
+            if (part.literal != null) {
+                encode(builder, part.literal, part.component, false);
+            } else {
+                if (!values.containsKey(part.name))
+                    throw new IllegalArgumentException("Map has no value for '" + part.name + "'");
+                Object value = values.get(part.name);
+                encode(builder, value != null ? value.toString() : "", part.component, true);
+            }
+        }
+        return URI.create(builder.toString());
+    }
+
+    private static void encode(StringBuilder builder, String source, int component, boolean variable) {
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c < 0x80 && isAllowed(c, component, variable)) {
+                builder.append(c);
+            } else {
+                String symbol = Character.isHighSurrogate(c) && i + 1 < source.length()
+                        ? source.substring(i, ++i + 1) : String.valueOf(c);
+                for (byte b : symbol.getBytes(StandardCharsets.UTF_8)) {
+                    builder.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+                }
+            }
+        }
+    }
+
+    private static boolean isAllowed(char c, int component, boolean variable) {
+        if (component == AUTHORITY)
+            return variable ? isUnreserved(c) || isSubDelimiter(c) : c > ' ' && c < 0x7F;
+        if (component == QUERY && c == '+')
+            return false;
+        boolean allowed = isUnreserved(c) || isSubDelimiter(c) || c == ':' || c == '@' || c == '/';
+        if (!variable)
+            return allowed || c == '?' || c == '#';
+        if (component == PATH)
+            return allowed;
+        if (component == QUERY && (c == '&' || c == '='))
+            return false;
+        return allowed || c == '?';
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isSubDelimiter(char c) {
+        return c == '!' || c == '$' || c == '&' || c == '\'' || c == '(' || c == ')'
+                || c == '*' || c == '+' || c == ',' || c == ';' || c == '=';
+    }
+
+    private static final class Part {
+        private final String literal;
+        private final String name;
+        private final int component;
+
+        private Part(String literal, String name, int component) {
+            this.literal = literal;
+            this.name = name;
+            this.component = component;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncExchangeTest {
+    private final MockWebServer server = new MockWebServer();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void enqueuedRequestDeliversSuccess() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        builder().get();
+
+        assertEquals("success ok 200", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("finish", events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void enqueuedRequestDeliversError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("missing"));
+
+        builder().get();
+
+        assertEquals("error 404", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("finish", events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelledRequestDeliversNothing() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        RestClientBuilder<String> builder = builder();
+
+        builder.get();
+        server.takeRequest(5, TimeUnit.SECONDS);
+        builder.cancel();
+
+        assertNull(events.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void expiredRequestDeliversGatewayTimeout() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long start = System.nanoTime();
+
+        builder().deadline(200, TimeUnit.MILLISECONDS).get();
+
+        assertEquals("error 504", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("finish", events.poll(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    private RestClientBuilder<String> builder() {
+        return RestClientBuilder.build(String.class)
+                .url(server.url("/items").toString())
+                .async()
+                .callbackExecutor(Runnable::run)
+                .success((object, headers, status) -> events.add("success " + object + " " + status.value()))
+                .error((error, headers, status) -> events.add("error " + status.value()))
+                .finish(() -> events.add("finish"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in of batch endpoint for tests: every application/http part of multipart/mixed request is answered
+ * by handler, parts of response go in reverse order so they can be matched only by Content-ID.
+ * Other requests are answered as single parts.
+ */
+final class BatchServer extends Dispatcher {
+    private static final String CRLF = "\r\n";
+
+    private final PartHandler handler;
+    private final AtomicInteger batchCount = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long delayMillis;
+
+    BatchServer(PartHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Count of multipart requests
+     */
+    int getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Count of all requests, multipart or single
+     */
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Hold every response for some time
+     */
+    void setDelay(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        requestCount.incrementAndGet();
+        Thread.sleep(delayMillis);
+        String contentType = request.getHeader("Content-Type");
+        if (contentType == null || !contentType.startsWith("multipart/mixed"))
+            return response(handler.respond(request.getMethod(), request.getPath(), request.getUtf8Body()));
+        batchCount.incrementAndGet();
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String body = request.getBody().readString(StandardCharsets.ISO_8859_1);
+        List<String> parts = new ArrayList<>();
+        for (String part : body.split("--" + boundary)) {
+            if (!part.contains("application/http"))
+                continue;
+            String id = part.substring(part.indexOf('<') + 1, part.indexOf('>'));
+            String message = part.substring(part.indexOf(CRLF + CRLF) + 4);
+            String[] requestLine = message.substring(0, message.indexOf(CRLF)).split(" ");
+            String partBody = message.substring(message.indexOf(CRLF + CRLF) + 4);
+            if (partBody.endsWith(CRLF))
+                partBody = partBody.substring(0, partBody.length() - 2);
+            parts.add(0, "--response_boundary" + CRLF + "Content-Type: application/http" + CRLF
+                    + "Content-ID: <response-" + id + ">" + CRLF + CRLF
+                    + handler.respond(requestLine[0], requestLine[1], partBody) + CRLF);
+        }
+        return new MockResponse()
+                .setHeader("Content-Type", "multipart/mixed; boundary=response_boundary")
+                .setBody(String.join("", parts) + "--response_boundary--" + CRLF);
+    }
+
+    /**
+     * Response message of part as single response
+     */
+    private static MockResponse response(String message) {
+        int headEnd = message.indexOf(CRLF + CRLF);
+        String[] lines = message.substring(0, headEnd).split(CRLF);
+        MockResponse response = new MockResponse().setStatus(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            response.addHeader(lines[i]);
+        }
+        return response.setBody(message.substring(headEnd + 4));
+    }
+
+    /**
+     * Handler of one request: method, path with query and body, returns HTTP response message
+     */
+    interface PartHandler {
+        String respond(String method, String target, String body);
+    }
+}
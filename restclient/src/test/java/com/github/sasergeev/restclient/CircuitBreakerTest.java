@@ -0,0 +1,186 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final String HOST = "host";
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 0.5f, 0.5f, 200, 100, TimeUnit.MILLISECONDS, 2);
+    private final AtomicInteger proceeded = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        CircuitBreaker.install(circuitBreaker);
+    }
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.install(null);
+    }
+
+    @Test
+    public void circuitIsOpenedByFailureRate() throws IOException {
+        call(request(), 200, true);
+        call(request(), 500, true);
+        call(request(), 200, true);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+        call(request(), 500, true);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+
+        try {
+            call(request(), 200, true);
+            fail("Call is let through open circuit");
+        } catch (CircuitBreaker.OpenException expected) {
+            assertEquals(4, proceeded.get());
+        }
+    }
+
+    @Test
+    public void slowCallsOpenCircuit() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            long delay = i % 2 == 0 ? 250 : 0;
+            proceed(request(), () -> {
+                sleep(delay);
+                return response(request(), 200, true);
+            });
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void trialCallsCloseCircuit() throws Exception {
+        open();
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(HOST));
+        call(request(), 200, true);
+        call(request(), 200, true);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void failedTrialCallOpensCircuitAgain() throws Exception {
+        open();
+        Thread.sleep(150);
+        call(request(), 503, true);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void responsesNotFromNetworkAreNotCounted() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            call(request(), 504, false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void onlyIfCachedRequestPassesOpenCircuit() throws IOException {
+        open();
+        Request request = request().newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+        assertEquals(504, call(request, 504, false).code());
+    }
+
+    @Test
+    public void cancelledCallsAreNotCounted() {
+        RestCall call = new RestCall(new Handler());
+        call.cancel();
+        Request request = request().newBuilder().tag(call).build();
+        for (int i = 0; i < 10; i++) {
+            try {
+                proceed(request, () -> {
+                    throw new IOException("Socket closed");
+                });
+                fail("Error is not thrown");
+            } catch (IOException expected) {
+                // not counted
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(HOST));
+    }
+
+    @Test
+    public void networkErrorsAreFailures() {
+        for (int i = 0; i < 4; i++) {
+            try {
+                proceed(request(), () -> {
+                    throw new IOException("Connection refused");
+                });
+            } catch (IOException expected) {
+                // counted
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+    }
+
+    private void open() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            call(request(), 500, true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(HOST));
+    }
+
+    private Response call(Request request, int code, boolean fromNetwork) throws IOException {
+        return proceed(request, () -> response(request, code, fromNetwork));
+    }
+
+    private Response proceed(Request request, Exchange exchange) throws IOException {
+        return CircuitBreaker.INTERCEPTOR.intercept(new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) throws IOException {
+                proceeded.incrementAndGet();
+                return exchange.run();
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+        });
+    }
+
+    private static Request request() {
+        return new Request.Builder().url("https://" + HOST + "/items").build();
+    }
+
+    private static Response response(Request request, int code, boolean fromNetwork) {
+        Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code);
+        if (fromNetwork)
+            builder.networkResponse(new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code).build());
+        return builder.build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Exchange {
+        Response run() throws IOException;
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Handshake;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.Route;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionGateTest {
+    private static final Request REQUEST = new Request.Builder().url("https://host/items").build();
+
+    private final ConnectionGate gate = new ConnectionGate();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicBoolean failNextOpen = new AtomicBoolean();
+    private volatile Protocol protocol = Protocol.HTTP_2;
+    private volatile Socket socket;
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentFirstRequestsShareOneConnection() throws Exception {
+        assertNull(gate.getProtocol(REQUEST.httpUrl()));
+
+        runConcurrently(REQUEST, 6);
+
+        assertEquals(1, opened.get());
+        assertEquals(Protocol.HTTP_2, gate.getProtocol(REQUEST.httpUrl()));
+    }
+
+    @Test
+    public void gateIsClosedAgainWhenConnectionIsLost() throws Exception {
+        runConcurrently(REQUEST, 6);
+        socket.close();
+
+        runConcurrently(REQUEST, 6);
+
+        assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void waitingRequestOpensConnectionWhenOpenerFails() throws Exception {
+        failNextOpen.set(true);
+        Future<Response> opener = executor.submit(() -> exchange(REQUEST));
+        Thread.sleep(50);
+        Future<Response> waiter = executor.submit(() -> exchange(REQUEST));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> opener.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals(200, waiter.get(5, TimeUnit.SECONDS).code());
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void cancelledWaitingRequestGivesUpAtOnce() throws Exception {
+        RestCall call = new RestCall(Runnable::run);
+        Future<Response> opener = executor.submit(() -> exchange(REQUEST));
+        Thread.sleep(50);
+        Future<Response> waiter = executor.submit(() -> exchange(REQUEST.newBuilder().tag(call).build()));
+        Thread.sleep(50);
+
+        call.cancel();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiter.get(100, TimeUnit.MILLISECONDS));
+        assertEquals("Canceled", e.getCause().getMessage());
+        assertEquals(200, opener.get(5, TimeUnit.SECONDS).code());
+    }
+
+    @Test
+    public void http1HostIsNotGated() throws Exception {
+        protocol = Protocol.HTTP_1_1;
+        runConcurrently(REQUEST, 1);
+        socket.close();
+
+        runConcurrently(REQUEST, 4);
+
+        assertEquals(5, opened.get());
+        assertEquals(Protocol.HTTP_1_1, gate.getProtocol(REQUEST.httpUrl()));
+    }
+
+    private void runConcurrently(Request request, int count) throws Exception {
+        List<Future<Response>> responses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            responses.add(executor.submit(() -> exchange(request)));
+        }
+        for (Future<Response> response : responses) {
+            assertEquals(200, response.get(5, TimeUnit.SECONDS).code());
+        }
+    }
+
+    /**
+     * Exchange through gate, request opens connection slowly if there is no live one or host is not gated
+     */
+    private Response exchange(Request request) throws IOException {
+        return gate.intercept(new TestChain(request, null, networkRequest -> {
+            Socket current = socket;
+            if (protocol == Protocol.HTTP_1_1 || current == null || current.isClosed()) {
+                sleep();
+                if (failNextOpen.getAndSet(false))
+                    throw new IOException("Failed to connect");
+                opened.incrementAndGet();
+                current = new Socket();
+                socket = current;
+            }
+            Connection connection = connection(current, protocol);
+            return gate.probe.intercept(new TestChain(networkRequest, connection, probed ->
+                    new Response.Builder().request(probed).protocol(protocol).code(200).build()));
+        }));
+    }
+
+    private static void sleep() throws IOException {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Connection connection(Socket socket, Protocol protocol) {
+        return new Connection() {
+            @Override
+            public Route getRoute() {
+                return null;
+            }
+
+            @Override
+            public Socket getSocket() {
+                return socket;
+            }
+
+            @Override
+            public Handshake getHandshake() {
+                return null;
+            }
+
+            @Override
+            public Protocol getProtocol() {
+                return protocol;
+            }
+        };
+    }
+
+    private interface Proceed {
+        Response proceed(Request request) throws IOException;
+    }
+
+    private static final class TestChain implements Interceptor.Chain {
+        private final Request request;
+        private final Connection connection;
+        private final Proceed proceed;
+
+        private TestChain(Request request, Connection connection, Proceed proceed) {
+            this.request = request;
+            this.connection = connection;
+            this.proceed = proceed;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            return proceed.proceed(request);
+        }
+
+        @Override
+        public Connection connection() {
+            return connection;
+        }
+    }
+}
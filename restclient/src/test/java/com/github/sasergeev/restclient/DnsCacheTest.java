@@ -0,0 +1,96 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DnsCacheTest {
+    private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resultsArePersistedForNextInstance() throws Exception {
+        File file = folder.newFile();
+        DnsCache cache = new DnsCache(file, TTL);
+        List<InetAddress> addresses = cache.lookup("localhost");
+
+        cache.save();
+
+        assertTrue(read(file).startsWith("localhost\t"));
+        assertEquals(addresses, new DnsCache(file, TTL).lookup("localhost"));
+    }
+
+    @Test
+    public void freshResultIsUsedWithoutLookup() throws Exception {
+        File file = write("fresh.invalid", System.currentTimeMillis() + TTL, "10.0.0.1");
+
+        List<InetAddress> addresses = new DnsCache(file, TTL).lookup("fresh.invalid");
+
+        assertEquals("10.0.0.1", addresses.get(0).getHostAddress());
+        assertEquals("fresh.invalid", addresses.get(0).getHostName());
+    }
+
+    @Test
+    public void expiredResultIsUsedWhenLookupFails() throws Exception {
+        File file = write("expired.invalid", System.currentTimeMillis() - 1, "10.0.0.2");
+
+        List<InetAddress> addresses = new DnsCache(file, TTL).lookup("expired.invalid");
+
+        assertEquals("10.0.0.2", addresses.get(0).getHostAddress());
+    }
+
+    @Test
+    public void resultExpiredLongAgoIsDropped() throws Exception {
+        File file = write("old.invalid", System.currentTimeMillis() - TimeUnit.HOURS.toMillis(7), "10.0.0.3");
+        DnsCache cache = new DnsCache(file, TTL);
+        cache.lookup("localhost");
+
+        assertThrows(UnknownHostException.class, () -> cache.lookup("old.invalid"));
+    }
+
+    @Test
+    public void resultIsDroppedWhenConnectionFails() throws Exception {
+        File file = write("localhost", System.currentTimeMillis() + TTL, "127.0.0.1");
+        DnsCache cache = new DnsCache(file, TTL);
+        OkHttpClient client = new OkHttpClient();
+        client.setDns(cache);
+        client.interceptors().add(cache);
+        client.networkInterceptors().add(cache.probe);
+
+        assertThrows(ConnectException.class, () -> client.newCall(new Request.Builder().url("http://localhost:1/").build()).execute());
+        cache.save();
+
+        assertFalse(read(file).contains("localhost"));
+    }
+
+    private File write(String host, long expiresAt, String address) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Collections.singletonList(host + "\t" + expiresAt + "\t" + address), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
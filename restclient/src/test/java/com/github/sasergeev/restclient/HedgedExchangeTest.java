@@ -0,0 +1,147 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedExchangeTest {
+    private static final OkHttpClient CLIENT = new OkHttpClient();
+    private static final Request REQUEST = new Request.Builder().url("https://host/items").build();
+
+    private final RestCall call = new RestCall(new Handler());
+    private final List<AsyncExchange.ExchangeCallback<String>> attempts = new CopyOnWriteArrayList<>();
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+    private final List<Object> results = new CopyOnWriteArrayList<>();
+    private Consumer<AsyncExchange.ExchangeCallback<String>> answer = callback -> {
+    };
+
+    @BeforeClass
+    public static void setUpClass() {
+        // first call initializes TLS of client, it is too slow for hedge delays
+        CLIENT.newCall(REQUEST);
+    }
+
+    @Test
+    public void fastResponseIsNotHedged() throws Exception {
+        answer = callback -> callback.onResponse(response("first"));
+        start(new HedgePolicy(300, TimeUnit.MILLISECONDS, 1));
+        Thread.sleep(500);
+
+        assertEquals(1, attempts.size());
+        assertEquals(1, results.size());
+        assertEquals("first", ((ResponseEntity<?>) results.get(0)).getBody());
+    }
+
+    @Test
+    public void firstResponseWinsAndCancelsOtherAttempt() throws Exception {
+        start(new HedgePolicy(50, TimeUnit.MILLISECONDS, 1));
+        Thread.sleep(150);
+        assertEquals(2, attempts.size());
+
+        attempts.get(1).onResponse(response("second"));
+        attempts.get(0).onResponse(response("first"));
+        assertEquals(1, results.size());
+        assertEquals("second", ((ResponseEntity<?>) results.get(0)).getBody());
+        assertTrue(calls.get(0).isCanceled());
+        assertFalse(calls.get(1).isCanceled());
+    }
+
+    @Test
+    public void networkErrorWaitsForOtherAttempt() throws Exception {
+        start(new HedgePolicy(50, TimeUnit.MILLISECONDS, 1));
+        Thread.sleep(150);
+
+        attempts.get(0).onFailure(new ResourceAccessException("I/O error", new IOException()));
+        assertTrue(results.isEmpty());
+        attempts.get(1).onResponse(response("second"));
+        assertEquals("second", ((ResponseEntity<?>) results.get(0)).getBody());
+    }
+
+    @Test
+    public void lastNetworkErrorIsDelivered() throws Exception {
+        start(new HedgePolicy(50, TimeUnit.MILLISECONDS, 1));
+        Thread.sleep(150);
+        RestClientException error = new ResourceAccessException("I/O error", new IOException());
+
+        attempts.get(0).onFailure(new ResourceAccessException("I/O error", new IOException()));
+        attempts.get(1).onFailure(error);
+        assertEquals(1, results.size());
+        assertSame(error, results.get(0));
+    }
+
+    @Test
+    public void httpErrorWinsAndStopsHedge() throws Exception {
+        RestClientException error = AsyncExchange.statusError(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), new byte[0]);
+        answer = callback -> callback.onFailure(error);
+        start(new HedgePolicy(300, TimeUnit.MILLISECONDS, 1));
+        Thread.sleep(500);
+
+        assertEquals(1, attempts.size());
+        assertSame(error, results.get(0));
+    }
+
+    @Test
+    public void cancelledCallIsNotHedged() throws Exception {
+        start(new HedgePolicy(50, TimeUnit.MILLISECONDS, 1));
+        call.cancel();
+        Thread.sleep(150);
+
+        assertEquals(1, attempts.size());
+        assertTrue(calls.get(0).isCanceled());
+    }
+
+    @Test
+    public void hedgesAreLimitedByBudget() throws Exception {
+        HedgePolicy policy = new HedgePolicy(50, TimeUnit.MILLISECONDS, 0.1);
+        start(policy);
+        start(policy);
+        Thread.sleep(150);
+
+        assertEquals(3, attempts.size());
+    }
+
+    private void start(HedgePolicy policy) {
+        HedgedExchange.start(call, policy, callback -> {
+            attempts.add(callback);
+            Call attempt = CLIENT.newCall(REQUEST);
+            calls.add(attempt);
+            answer.accept(callback);
+            return attempt;
+        }, new AsyncExchange.ExchangeCallback<String>() {
+            @Override
+            public void onResponse(ResponseEntity<String> responseEntity) {
+                results.add(responseEntity);
+            }
+
+            @Override
+            public void onFailure(RestClientException exception) {
+                results.add(exception);
+            }
+        });
+    }
+
+    private static ResponseEntity<String> response(String body) {
+        return new ResponseEntity<>(body, HttpStatus.OK);
+    }
+}
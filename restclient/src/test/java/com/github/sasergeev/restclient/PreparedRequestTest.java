@@ -0,0 +1,86 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedRequestTest {
+    private final MockWebServer server = new MockWebServer();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void headersAreFrozenWhenPrepared() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", "first");
+        PreparedRequest<String> request = prepare(headers);
+        headers.set("X-Client", "second");
+        headers.set("X-Other", "other");
+
+        assertEquals("first", request.getHeaders().getFirst("X-Client"));
+        assertFalse(request.getHeaders().containsKey("X-Other"));
+        assertThrows(UnsupportedOperationException.class, () -> request.getHeaders().set("X-Client", "third"));
+    }
+
+    @Test
+    public void acceptIsResolvedOnce() {
+        PreparedRequest<String> request = prepare(new HttpHeaders());
+
+        assertTrue(request.getHeaders().getAccept().contains(MediaType.TEXT_PLAIN));
+        assertTrue(request.getEntity().getHeaders().getAccept().contains(MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    public void ownAcceptIsKept() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, "application/json");
+
+        assertEquals("application/json", prepare(headers).getHeaders().getFirst(HttpHeaders.ACCEPT));
+    }
+
+    @Test
+    public void everyCallSendsFrozenHeaders() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", "first");
+        PreparedRequest<String> request = prepare(headers);
+        server.enqueue(new MockResponse().setBody("one"));
+        server.enqueue(new MockResponse().setBody("two"));
+
+        ResponseEntity<String> first = request.execute("1", "a b");
+        ResponseEntity<String> second = request.execute("2", "c");
+
+        assertEquals("one", first.getBody());
+        assertEquals("two", second.getBody());
+        for (String path : new String[]{"/items/1?q=a%20b", "/items/2?q=c"}) {
+            RecordedRequest recorded = server.takeRequest();
+            assertEquals(path, recorded.getPath());
+            assertEquals("first", recorded.getHeader("X-Client"));
+            assertTrue(recorded.getHeader(HttpHeaders.ACCEPT).contains("text/plain"));
+        }
+    }
+
+    private PreparedRequest<String> prepare(HttpHeaders headers) {
+        return new PreparedRequest<>(HttpMethod.GET, server.url("/items").toString() + "/{id}?q={q}", headers, String.class, RestEngine.getDefault());
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RestBatchTest {
+    private final BatchServer batchServer = new BatchServer((method, target, body) -> target.contains("missing")
+            ? "HTTP/1.1 404 Not Found\r\nContent-Type: text/plain\r\n\r\nno such item"
+            : "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\n" + method + " " + target + (body.isEmpty() ? "" : " " + body));
+    private final MockWebServer server = new MockWebServer();
+    private RestBatch batch;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(batchServer);
+        server.start();
+        batch = new RestBatch(server.url("/batch").toString(), 1, TimeUnit.MINUTES, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void partsOfResponseAreMatchedByContentId() throws Exception {
+        Result first = add(newCall(), HttpMethod.GET, "/items/1", null);
+        Result missing = add(newCall(), HttpMethod.GET, "/items/missing", null);
+        Result put = add(newCall(), HttpMethod.PUT, "/items/2", "name");
+        batch.flush();
+
+        assertEquals("GET /items/1", first.await().getBody());
+        assertEquals(HttpStatus.NOT_FOUND, ((HttpClientErrorException) missing.awaitFailure()).getStatusCode());
+        assertEquals("PUT /items/2 name", put.await().getBody());
+        assertEquals(1, batchServer.getBatchCount());
+    }
+
+    @Test
+    public void batchIsSentWhenMaxSizeIsReached() throws Exception {
+        batch = new RestBatch(server.url("/batch").toString(), 1, TimeUnit.MINUTES, 2);
+        Result first = add(newCall(), HttpMethod.GET, "/items/1", null);
+        Result second = add(newCall(), HttpMethod.GET, "/items/2", null);
+
+        assertEquals("GET /items/1", first.await().getBody());
+        assertEquals("GET /items/2", second.await().getBody());
+        assertEquals(1, batchServer.getBatchCount());
+    }
+
+    @Test
+    public void singleRequestIsSentAsItIs() throws Exception {
+        Result single = add(newCall(), HttpMethod.GET, "/items/1", null);
+        batch.flush();
+
+        assertEquals("GET /items/1", single.await().getBody());
+        assertEquals(0, batchServer.getBatchCount());
+    }
+
+    @Test
+    public void cancelledRequestIsNotSent() throws Exception {
+        RestCall cancelled = newCall();
+        Result first = add(newCall(), HttpMethod.GET, "/items/1", null);
+        add(cancelled, HttpMethod.GET, "/items/2", null);
+        cancelled.cancel();
+        batch.flush();
+
+        assertEquals("GET /items/1", first.await().getBody());
+        assertEquals(1, batchServer.getRequestCount());
+        assertEquals(0, batchServer.getBatchCount());
+    }
+
+    @Test
+    public void batchRequestIsCancelledWithAllItsCalls() throws Exception {
+        batchServer.setDelay(2000);
+        RestCall first = newCall();
+        RestCall second = newCall();
+        Result firstResult = add(first, HttpMethod.GET, "/items/1", null);
+        Result secondResult = add(second, HttpMethod.GET, "/items/2", null);
+        batch.flush();
+        awaitRunningCalls(1);
+
+        first.cancel();
+        Thread.sleep(100);
+        assertEquals(1, runningCalls());
+        second.cancel();
+        awaitRunningCalls(0);
+        assertFalse(firstResult.isDone());
+        assertFalse(secondResult.isDone());
+    }
+
+    @Test
+    public void expiredCallFailsWithoutWaitingForBatch() throws Exception {
+        batchServer.setDelay(1000);
+        RestCall expiring = newCall();
+        expiring.expireAfter(100, TimeUnit.MILLISECONDS);
+        Result expired = add(expiring, HttpMethod.GET, "/items/1", null);
+        Result other = add(newCall(), HttpMethod.GET, "/items/2", null);
+        long start = System.nanoTime();
+        batch.flush();
+
+        RestClientException exception = expired.awaitFailure();
+        assertTrue(exception instanceof ResourceAccessException);
+        assertTrue(exception.getMessage().contains(RestCall.DEADLINE_EXCEEDED));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals("GET /items/2", other.await().getBody());
+    }
+
+    private static RestCall newCall() {
+        return new RestCall(new Handler());
+    }
+
+    private Result add(RestCall call, HttpMethod httpMethod, String path, String body) {
+        Result result = new Result();
+        batch.add(call, httpMethod, server.url(path).uri(), new HttpEntity<>(body), String.class, result);
+        return result;
+    }
+
+    private static int runningCalls() {
+        return RestEngine.getDefault().getHttpClient().getDispatcher().getRunningCallCount();
+    }
+
+    private static void awaitRunningCalls(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (runningCalls() != count && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, runningCalls());
+    }
+
+    private static final class Result implements AsyncExchange.ExchangeCallback<String> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile ResponseEntity<String> responseEntity;
+        private volatile RestClientException exception;
+
+        @Override
+        public void onResponse(ResponseEntity<String> responseEntity) {
+            this.responseEntity = responseEntity;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(RestClientException exception) {
+            this.exception = exception;
+            done.countDown();
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        ResponseEntity<String> await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNull(exception);
+            return responseEntity;
+        }
+
+        RestClientException awaitFailure() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNull(responseEntity);
+            return exception;
+        }
+    }
+}
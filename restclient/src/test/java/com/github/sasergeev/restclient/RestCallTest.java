@@ -0,0 +1,112 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RestCallTest {
+    private final MockWebServer server = new MockWebServer();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void remainingTimeIsSentInHeader() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        builder().deadline(2, TimeUnit.SECONDS).getFuture().get(5, TimeUnit.SECONDS);
+
+        long remaining = Long.parseLong(server.takeRequest().getHeader(RestCall.TIMEOUT_HEADER));
+        assertTrue(remaining > 0 && remaining <= 2000);
+    }
+
+    @Test
+    public void requestWithoutDeadlineHasNoHeader() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        builder().getFuture().get(5, TimeUnit.SECONDS);
+
+        RecordedRequest request = server.takeRequest();
+        assertNull(request.getHeader(RestCall.TIMEOUT_HEADER));
+    }
+
+    @Test
+    public void expiredCallDeliversGatewayTimeout() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        long start = System.nanoTime();
+
+        builder().deadline(200, TimeUnit.MILLISECONDS)
+                .error((error, headers, status) -> events.add("error " + status.value()))
+                .get();
+
+        assertEquals("error 504", events.poll(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void expiredCallFailsFuture() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        CompletableFuture<?> future = builder().deadline(200, TimeUnit.MILLISECONDS).getFuture();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ResourceAccessException);
+    }
+
+    @Test
+    public void deadlineAbortsExchangeOnce() throws Exception {
+        RestCall call = new RestCall(Runnable::run);
+        AtomicInteger aborts = new AtomicInteger();
+        call.whenAborted(aborts::incrementAndGet);
+
+        call.expireAfter(50, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+
+        assertTrue(call.isExpired());
+        assertFalse(call.isCancelled());
+        assertEquals(1, aborts.get());
+    }
+
+    @Test
+    public void finishedCallDoesNotExpire() throws Exception {
+        RestCall call = new RestCall(Runnable::run);
+        call.expireAfter(50, TimeUnit.MILLISECONDS);
+
+        call.finish();
+        Thread.sleep(200);
+
+        assertFalse(call.isExpired());
+    }
+
+    private RestClientBuilder<String> builder() {
+        return RestClientBuilder.build(String.class)
+                .url(server.url("/items").toString())
+                .callbackExecutor(Runnable::run);
+    }
+}
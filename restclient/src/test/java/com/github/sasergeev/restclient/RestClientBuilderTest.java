@@ -0,0 +1,143 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RestClientBuilderTest {
+    private final MockWebServer server = new MockWebServer();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void futureCompletesWithResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("blocking"));
+        server.enqueue(new MockResponse().setBody("enqueued"));
+
+        ResponseEntity<String> blocking = builder().getFuture().get(5, TimeUnit.SECONDS);
+        ResponseEntity<String> enqueued = builder().async().getFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("blocking", blocking.getBody());
+        assertEquals(HttpStatus.OK, blocking.getStatusCode());
+        assertEquals("enqueued", enqueued.getBody());
+    }
+
+    @Test
+    public void errorStatusCompletesFutureExceptionally() {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        CompletableFuture<ResponseEntity<String>> future = builder().getFuture();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof HttpStatusCodeException);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ((HttpStatusCodeException) e.getCause()).getStatusCode());
+    }
+
+    @Test
+    public void cancellingFutureCancelsCall() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        RestClientBuilder<String> builder = builder().async();
+        CompletableFuture<ResponseEntity<String>> future = builder.getFuture();
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+
+        future.cancel(false);
+
+        assertTrue(future.isCancelled());
+        awaitRunningCalls(0);
+    }
+
+    @Test
+    public void cancellingBuilderCancelsFuture() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        RestClientBuilder<String> builder = builder();
+        CompletableFuture<ResponseEntity<String>> future = builder.getFuture();
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+
+        builder.cancel();
+
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void staleResponseIsDeliveredBeforeFreshOne() throws Exception {
+        server.enqueue(new MockResponse().setBody("v1"));
+        server.enqueue(new MockResponse().setBody("v2"));
+        RestClientBuilder<String> builder = revalidating(100);
+
+        builder.get();
+        assertEquals("fresh v1", events.poll(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        builder.get();
+
+        assertEquals("stale v1", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("fresh v2", events.poll(5, TimeUnit.SECONDS));
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void freshCachedResponseIsNotRevalidated() throws Exception {
+        server.enqueue(new MockResponse().setBody("v1"));
+        RestClientBuilder<String> builder = revalidating(5000);
+
+        builder.get();
+        assertEquals("fresh v1", events.poll(5, TimeUnit.SECONDS));
+        builder.get();
+
+        assertEquals("fresh v1", events.poll(5, TimeUnit.SECONDS));
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private RestClientBuilder<String> revalidating(long ttlMillis) {
+        return builder()
+                .cache(ttlMillis, TimeUnit.MILLISECONDS)
+                .staleWhileRevalidate()
+                .success((object, headers, status) ->
+                        events.add((RestClientBuilder.isStale(headers) ? "stale " : "fresh ") + object));
+    }
+
+    private RestClientBuilder<String> builder() {
+        return RestClientBuilder.build(String.class)
+                .url(server.url("/items").toString())
+                .callbackExecutor(Runnable::run);
+    }
+
+    private static int runningCalls() {
+        return RestEngine.getDefault().getHttpClient().getDispatcher().getRunningCallCount();
+    }
+
+    private static void awaitRunningCalls(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (runningCalls() != count && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, runningCalls());
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RestDispatcherTest {
+    private static final String URL = "https://host/items";
+    private static final Request REQUEST = new Request.Builder().url(URL).build();
+
+    @Test
+    public void hostOfUrl() {
+        assertEquals("host", RestDispatcher.hostOf("https://user@Host:8080/items?q=1"));
+        assertEquals("host", RestDispatcher.hostOf("host/items"));
+        assertEquals("[::1]", RestDispatcher.hostOf("http://[::1]:8080/"));
+        assertEquals("", RestDispatcher.hostOf(null));
+    }
+
+    @Test
+    public void waitingRequestsStartInOrderOfPriority() throws Exception {
+        RestDispatcher dispatcher = new RestDispatcher(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<RestDispatcher.Priority> started = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher.execute(URL, () -> await(release));
+        for (RestDispatcher.Priority priority : Arrays.asList(RestDispatcher.Priority.BACKGROUND, RestDispatcher.Priority.NORMAL, RestDispatcher.Priority.IMMEDIATE)) {
+            dispatcher.execute(URL, priority, () -> {
+                started.add(priority);
+                done.countDown();
+            });
+        }
+        assertEquals(3, dispatcher.getQueuedCount());
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(RestDispatcher.Priority.IMMEDIATE, RestDispatcher.Priority.NORMAL, RestDispatcher.Priority.BACKGROUND), started);
+    }
+
+    @Test
+    public void limitsOverallAndPerHost() throws Exception {
+        RestDispatcher dispatcher = new RestDispatcher(3, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.execute(URL, () -> await(release));
+        }
+        dispatcher.execute("https://other/items", () -> await(release));
+        dispatcher.execute("https://third/items", () -> await(release));
+
+        assertEquals(3, dispatcher.getRunningCount());
+        assertEquals(2, dispatcher.getRunningCount("host"));
+        assertEquals(2, dispatcher.getQueuedCount());
+        release.countDown();
+        awaitCompleted(dispatcher, 5);
+    }
+
+    @Test
+    public void backgroundRequestsTakeAtMostHalfOfSlots() throws Exception {
+        RestDispatcher dispatcher = new RestDispatcher(4, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.execute(URL, RestDispatcher.Priority.BACKGROUND, () -> await(release));
+        }
+        assertEquals(2, dispatcher.getRunningCount());
+        dispatcher.execute(URL, () -> await(release));
+        assertEquals(3, dispatcher.getRunningCount());
+        assertEquals(2, dispatcher.getQueuedCount(RestDispatcher.Priority.BACKGROUND));
+        release.countDown();
+        awaitCompleted(dispatcher, 5);
+    }
+
+    @Test
+    public void adaptiveLimitGrowsWhileLatencyIsSteady() throws Exception {
+        RestDispatcher dispatcher = RestDispatcher.adaptive(64, 20);
+        assertEquals(5, dispatcher.getLimit("host"));
+        roundTrips(dispatcher, RestDispatcher.Priority.NORMAL, 100, 20);
+
+        assertTrue(dispatcher.getLimit("host") > 5);
+    }
+
+    @Test
+    public void adaptiveLimitIsCutWhenLatencyGrows() throws Exception {
+        RestDispatcher dispatcher = RestDispatcher.adaptive(64, 20);
+        roundTrips(dispatcher, RestDispatcher.Priority.NORMAL, 20, 20);
+        int limit = dispatcher.getLimit("host");
+        roundTrips(dispatcher, RestDispatcher.Priority.NORMAL, 40, 100);
+
+        assertTrue(dispatcher.getLimit("host") < limit);
+    }
+
+    @Test
+    public void backgroundAndNotNetworkTasksAreNotSampled() throws Exception {
+        RestDispatcher dispatcher = RestDispatcher.adaptive(64, 20);
+        roundTrips(dispatcher, RestDispatcher.Priority.NORMAL, 20, 20);
+        int limit = dispatcher.getLimit("host");
+        roundTrips(dispatcher, RestDispatcher.Priority.BACKGROUND, 40, 100);
+        for (int i = 0; i < 40; i++) {
+            dispatcher.execute(URL, () -> sleep(100));
+        }
+        awaitCompleted(dispatcher, 100);
+
+        assertEquals(limit, dispatcher.getLimit("host"));
+    }
+
+    /**
+     * Run tasks making network round trip of some latency through interceptor of dispatcher
+     */
+    private static void roundTrips(RestDispatcher dispatcher, RestDispatcher.Priority priority, int count, long latencyMillis) throws Exception {
+        long completed = dispatcher.getCompletedCount();
+        for (int i = 0; i < count; i++) {
+            dispatcher.execute(URL, priority, () -> {
+                try {
+                    RestDispatcher.INTERCEPTOR.intercept(new Interceptor.Chain() {
+                        @Override
+                        public Request request() {
+                            return REQUEST;
+                        }
+
+                        @Override
+                        public Response proceed(Request request) {
+                            sleep(latencyMillis);
+                            return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).build();
+                        }
+
+                        @Override
+                        public Connection connection() {
+                            return null;
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        awaitCompleted(dispatcher, completed + count);
+    }
+
+    private static void awaitCompleted(RestDispatcher dispatcher, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dispatcher.getCompletedCount() < count && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, dispatcher.getCompletedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
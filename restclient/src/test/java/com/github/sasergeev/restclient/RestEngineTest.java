@@ -0,0 +1,116 @@
+package com.github.sasergeev.restclient;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RestEngineTest {
+    private static final File CACHE_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "restclient-engine-test");
+
+    private final MockWebServer server = new MockWebServer();
+
+    @BeforeClass
+    public static void setUpClass() {
+        File[] files = CACHE_DIRECTORY.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        RestEngine.installCache(CACHE_DIRECTORY, 1024 * 1024);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void freshResponseIsServedFromDisk() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=60").setBody("cached"));
+        Cache cache = RestEngine.getCache();
+        int hits = cache.getHitCount();
+
+        ResponseEntity<String> first = get("/fresh");
+        ResponseEntity<String> second = get("/fresh");
+
+        assertEquals("cached", first.getBody());
+        assertEquals("cached", second.getBody());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    @Test
+    public void staleResponseIsRevalidated() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "no-cache").setHeader("ETag", "\"v1\"").setBody("cached"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        ResponseEntity<String> first = get("/stale");
+        ResponseEntity<String> second = get("/stale");
+
+        assertEquals("cached", first.getBody());
+        assertEquals("cached", second.getBody());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        RecordedRequest revalidation = server.takeRequest();
+        assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void cacheIsInstalledInDerivedEngines() {
+        RestEngine engine = RestEngine.getDefault().withTimeouts(1, 2, 3, TimeUnit.SECONDS);
+
+        assertSame(RestEngine.getCache(), engine.getHttpClient().getCache());
+        assertSame(RestEngine.getCache(), RestEngine.getDefault().getHttpClient().getCache());
+    }
+
+    @Test
+    public void derivedEnginesAreKeptBySettings() {
+        RestEngine engine = RestEngine.getDefault();
+        RestEngine derived = engine.withTimeouts(5, 10, 10, TimeUnit.SECONDS);
+
+        assertSame(derived, engine.withTimeouts(5000, 10000, 10000, TimeUnit.MILLISECONDS));
+        assertSame(derived.withTransport(RestEngine.Transport.HTTP_1_1),
+                engine.withTransport(RestEngine.Transport.HTTP_1_1).withTimeouts(5, 10, 10, TimeUnit.SECONDS));
+        assertEquals(5000, derived.getHttpClient().getConnectTimeout());
+        assertSame(engine.getMessageConverters(), derived.getMessageConverters());
+    }
+
+    @Test
+    public void derivedEnginesAreBounded() {
+        RestEngine engine = RestEngine.getDefault();
+        RestEngine first = engine.withTimeouts(1, 1, 1, TimeUnit.SECONDS);
+
+        for (int i = 2; i < 40; i++) {
+            engine.withTimeouts(i, i, i, TimeUnit.SECONDS);
+        }
+
+        assertNotSame(first, engine.withTimeouts(1, 1, 1, TimeUnit.SECONDS));
+    }
+
+    private ResponseEntity<String> get(String path) throws Exception {
+        return RestClientBuilder.build(String.class)
+                .url(server.url(path).toString())
+                .getFuture()
+                .get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.sasergeev.restclient;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RestGroupTest {
+    private final RestGroup group = new RestGroup(5, TimeUnit.SECONDS);
+
+    @Test
+    public void groupIsCompletedWhenAllRequestsAreDone() throws Exception {
+        CompletableFuture<ResponseEntity<String>> first = group.add(new CompletableFuture<>());
+        CompletableFuture<ResponseEntity<String>> second = group.addOptional(new CompletableFuture<>());
+        CompletableFuture<RestGroup.Result> result = group.result();
+        first.complete(response("first"));
+        assertFalse(result.isDone());
+
+        second.complete(response("second"));
+
+        RestGroup.Result groupResult = result.get(1, TimeUnit.SECONDS);
+        assertEquals(RestGroup.State.COMPLETED, groupResult.getState());
+        assertTrue(groupResult.isSuccessful());
+        assertEquals("first", groupResult.getResponse(first).getBody());
+        assertEquals("second", groupResult.getResponse(second).getBody());
+        assertEquals(2, groupResult.getCount());
+    }
+
+    @Test
+    public void deadlineCancelsPendingRequests() throws Exception {
+        RestGroup group = new RestGroup(100, TimeUnit.MILLISECONDS);
+        CompletableFuture<ResponseEntity<String>> done = group.add(new CompletableFuture<>());
+        CompletableFuture<ResponseEntity<String>> pending = group.add(new CompletableFuture<>());
+        done.complete(response("done"));
+
+        RestGroup.Result result = group.result().get(1, TimeUnit.SECONDS);
+
+        assertEquals(RestGroup.State.TIMED_OUT, result.getState());
+        assertFalse(result.isSuccessful());
+        assertEquals("done", result.getResponse(done).getBody());
+        assertTrue(pending.isCancelled());
+        assertTrue(result.getError(pending) instanceof CancellationException);
+    }
+
+    @Test
+    public void failureOfCriticalRequestCancelsGroup() throws Exception {
+        CompletableFuture<ResponseEntity<String>> critical = group.add(new CompletableFuture<>());
+        CompletableFuture<ResponseEntity<String>> optional = group.addOptional(new CompletableFuture<>());
+        IOException error = new IOException("failed");
+
+        critical.completeExceptionally(error);
+
+        RestGroup.Result result = group.result().get(1, TimeUnit.SECONDS);
+        assertEquals(RestGroup.State.FAILED, result.getState());
+        assertSame(error, result.getError(critical));
+        assertNull(result.getResponse(critical));
+        assertTrue(optional.isCancelled());
+    }
+
+    @Test
+    public void failureOfOptionalRequestIsOnlyReported() throws Exception {
+        CompletableFuture<ResponseEntity<String>> critical = group.add(new CompletableFuture<>());
+        CompletableFuture<ResponseEntity<String>> optional = group.addOptional(new CompletableFuture<>());
+        IOException error = new IOException("failed");
+
+        optional.completeExceptionally(error);
+        critical.complete(response("critical"));
+
+        RestGroup.Result result = group.result().get(1, TimeUnit.SECONDS);
+        assertEquals(RestGroup.State.COMPLETED, result.getState());
+        assertTrue(result.isSuccessful());
+        assertSame(error, result.getError(optional));
+        assertNull(result.getError(critical));
+    }
+
+    @Test
+    public void cancelledGroupCancelsRequestsOfFutures() throws Exception {
+        RestCall call = new RestCall(Runnable::run);
+        CompletableFuture<ResponseEntity<String>> future = group.add(call, new CompletableFuture<>());
+
+        group.cancel();
+
+        assertTrue(group.isCancelled());
+        assertTrue(future.isCancelled());
+        assertTrue(call.isCancelled());
+        assertEquals(RestGroup.State.CANCELLED, group.result().get(1, TimeUnit.SECONDS).getState());
+    }
+
+    @Test
+    public void requestAddedToFinishedGroupIsCancelled() {
+        RestCall call = new RestCall(Runnable::run);
+        group.cancel();
+
+        CompletableFuture<ResponseEntity<String>> future = group.addOptional(call, new CompletableFuture<>());
+
+        assertTrue(future.isCancelled());
+        assertTrue(call.isCancelled());
+    }
+
+    @Test
+    public void closedGroupRejectsRequests() {
+        group.result();
+
+        assertThrows(IllegalStateException.class, () -> group.add(new CompletableFuture<ResponseEntity<String>>()));
+    }
+
+    private static ResponseEntity<String> response(String body) {
+        return new ResponseEntity<>(body, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.sasergeev.restclient;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RestObjectCacheTest {
+    private static final URI URI = java.net.URI.create("https://host/items/1");
+
+    @Test
+    public void keyDoesNotDependOnOrderOfHeaders() {
+        HttpHeaders first = new HttpHeaders();
+        first.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        first.set("X-Token", "a");
+        HttpHeaders second = new HttpHeaders();
+        second.set("X-Token", "a");
+        second.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+
+        assertEquals(RestObjectCache.key(String.class, URI, first), RestObjectCache.key(String.class, URI, second));
+        second.set("X-Token", "b");
+        assertNotEquals(RestObjectCache.key(String.class, URI, first), RestObjectCache.key(String.class, URI, second));
+        assertNotEquals(RestObjectCache.key(String.class, URI, first), RestObjectCache.key(Object.class, URI, first));
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        RestObjectCache cache = new RestObjectCache(10, 1024 * 1024);
+        ResponseEntity<String> response = response("a", 10);
+        assertNull(cache.get("a"));
+        cache.put("a", response, 1, TimeUnit.MINUTES);
+
+        assertSame(response, cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getCount());
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void expiredEntryIsStale() {
+        RestObjectCache cache = new RestObjectCache(10, 1024 * 1024);
+        ResponseEntity<String> response = response("a", 10);
+        cache.put("a", response, 0, TimeUnit.MILLISECONDS);
+
+        assertNull(cache.get("a"));
+        assertSame(response, cache.getStale("a"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        RestObjectCache cache = new RestObjectCache(2, 1024 * 1024);
+        cache.put("a", response("a", 10), 1, TimeUnit.MINUTES);
+        cache.put("b", response("b", 10), 1, TimeUnit.MINUTES);
+        cache.get("a");
+        cache.put("c", response("c", 10), 1, TimeUnit.MINUTES);
+
+        assertEquals(2, cache.getCount());
+        assertNull(cache.getStale("b"));
+        assertEquals("a", cache.getStale("a").getBody());
+    }
+
+    @Test
+    public void sizeBudgetIsKept() {
+        RestObjectCache cache = new RestObjectCache(10, 100);
+        cache.put("a", response("a", 60), 1, TimeUnit.MINUTES);
+        cache.put("b", response("b", 60), 1, TimeUnit.MINUTES);
+        assertNull(cache.getStale("a"));
+        assertEquals(60, cache.getSize());
+
+        cache.put("c", response("c", 1000), 1, TimeUnit.MINUTES);
+        assertNull(cache.getStale("c"));
+        assertEquals(1, cache.getCount());
+    }
+
+    @Test
+    public void replacedEntryIsNotCountedTwice() {
+        RestObjectCache cache = new RestObjectCache(10, 1024 * 1024);
+        cache.put("a", response("a", 10), 1, TimeUnit.MINUTES);
+        cache.put("a", response("b", 20), 1, TimeUnit.MINUTES);
+
+        assertEquals(1, cache.getCount());
+        assertEquals(20, cache.getSize());
+        assertEquals("b", cache.get("a").getBody());
+    }
+
+    private static ResponseEntity<String> response(String body, long contentLength) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(contentLength);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.sasergeev.restclient;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RestScopeTest {
+    private final MockWebServer server = new MockWebServer();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final LifecycleOwner owner = new LifecycleOwner() {
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    };
+    private final LifecycleRegistry registry = LifecycleRegistry.createUnsafe(owner);
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        registry.setCurrentState(Lifecycle.State.RESUMED);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void ownerHasOneScopeUntilDestroyed() {
+        RestScope scope = RestScope.of(owner);
+        assertSame(scope, RestScope.of(owner));
+
+        registry.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+
+        assertTrue(scope.isCancelled());
+        assertNotSame(scope, RestScope.of(owner));
+    }
+
+    @Test
+    public void destroyCancelsRunningRequestsWithoutCallbacks() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        builder().get();
+        builder().async().get();
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        RestScope scope = RestScope.of(owner);
+        assertEquals(2, scope.getActiveCount());
+
+        registry.handleLifecycleEvent(Lifecycle.Event.ON_PAUSE);
+        assertFalse(scope.isCancelled());
+        registry.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+
+        assertTrue(scope.isCancelled());
+        assertEquals(0, scope.getActiveCount());
+        assertNull(events.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void requestOfDestroyedOwnerIsNotSent() throws Exception {
+        registry.setCurrentState(Lifecycle.State.DESTROYED);
+
+        builder().get();
+
+        assertTrue(RestScope.of(owner).isCancelled());
+        assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void ownScopeCancelsItsRequests() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        RestScope scope = new RestScope();
+        builder().scope(scope).get();
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+
+        scope.cancel();
+
+        assertEquals(0, scope.getActiveCount());
+        assertNull(events.poll(1, TimeUnit.SECONDS));
+    }
+
+    private RestClientBuilder<String> builder() {
+        return RestClientBuilder.build(String.class)
+                .url(server.url("/items").toString())
+                .scope(owner)
+                .callbackExecutor(Runnable::run)
+                .success((object, headers, status) -> events.add("success"))
+                .error((error, headers, status) -> events.add("error"))
+                .finish(() -> events.add("finish"));
+    }
+}
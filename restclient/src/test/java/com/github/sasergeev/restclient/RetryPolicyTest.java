@@ -0,0 +1,196 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    private static final String URL = "https://host/items";
+
+    private final RetryPolicy policy = new RetryPolicy(2, 100, 2000, TimeUnit.MILLISECONDS);
+
+    @Before
+    public void setUp() {
+        RetryPolicy.setBudget(0.1, 10);
+    }
+
+    @Test
+    public void postIsRetriedOnlyWithIdempotencyKey() {
+        assertTrue(RetryPolicy.isRetryable(HttpMethod.GET, false));
+        assertTrue(RetryPolicy.isRetryable(HttpMethod.PUT, false));
+        assertFalse(RetryPolicy.isRetryable(HttpMethod.POST, false));
+        assertFalse(RetryPolicy.isRetryable(HttpMethod.PATCH, false));
+        assertTrue(RetryPolicy.isRetryable(HttpMethod.POST, true));
+    }
+
+    @Test
+    public void transientErrorsAreRetried() {
+        assertTrue(RetryPolicy.isRetryable(status(HttpStatus.SERVICE_UNAVAILABLE, null)));
+        assertTrue(RetryPolicy.isRetryable(status(HttpStatus.TOO_MANY_REQUESTS, null)));
+        assertTrue(RetryPolicy.isRetryable(new ResourceAccessException("I/O error", new IOException())));
+        assertFalse(RetryPolicy.isRetryable(status(HttpStatus.NOT_FOUND, null)));
+        assertFalse(RetryPolicy.isRetryable(status(HttpStatus.INTERNAL_SERVER_ERROR, null)));
+        assertFalse(RetryPolicy.isRetryable(new ResourceAccessException("Open", new CircuitBreaker.OpenException("host"))));
+    }
+
+    @Test
+    public void backoffIsBoundedAndRetriesAreLimited() {
+        RestClientException error = status(HttpStatus.SERVICE_UNAVAILABLE, null);
+        for (int i = 0; i < 10; i++) {
+            long first = policy.retryDelay(0, error);
+            long second = policy.retryDelay(1, error);
+            assertTrue(first >= 0 && first <= 100);
+            assertTrue(second >= 0 && second <= 200);
+            RetryPolicy.setBudget(0.1, 10);
+        }
+        assertEquals(-1, policy.retryDelay(2, error));
+        assertEquals(-1, policy.retryDelay(0, status(HttpStatus.NOT_FOUND, null)));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryPolicy.setBudget(0.1, 2);
+        RestClientException error = status(HttpStatus.SERVICE_UNAVAILABLE, null);
+        assertTrue(policy.retryDelay(0, error) >= 0);
+        assertTrue(policy.retryDelay(0, error) >= 0);
+        assertEquals(-1, policy.retryDelay(0, error));
+    }
+
+    @Test
+    public void retryAfterIsRespected() {
+        assertEquals(1000, RetryPolicy.retryAfter(status(HttpStatus.TOO_MANY_REQUESTS, "1")));
+        assertTrue(policy.retryDelay(0, status(HttpStatus.SERVICE_UNAVAILABLE, "1")) >= 1000);
+        assertEquals(0, RetryPolicy.retryAfter(status(HttpStatus.BAD_GATEWAY, "1")));
+        assertEquals(0, RetryPolicy.retryAfter(status(HttpStatus.SERVICE_UNAVAILABLE, "soon")));
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long retryAfter = RetryPolicy.retryAfter(status(HttpStatus.SERVICE_UNAVAILABLE, format.format(new Date(System.currentTimeMillis() + 5000))));
+        assertTrue(retryAfter > 3000 && retryAfter <= 5000);
+    }
+
+    @Test
+    public void tooLongRetryAfterIsNotWaited() {
+        assertEquals(-1, policy.retryDelay(0, status(HttpStatus.SERVICE_UNAVAILABLE, "60")));
+    }
+
+    @Test
+    public void failedAttemptIsRunAgain() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = execute(new RestDispatcher(4, 1), newCall(), () -> {
+            if (attempts.incrementAndGet() < 3)
+                throw status(HttpStatus.SERVICE_UNAVAILABLE, null);
+            return "ok";
+        });
+
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void waitingForRetryDoesNotHoldSlot() throws Exception {
+        RestDispatcher dispatcher = new RestDispatcher(4, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = execute(dispatcher, newCall(), () -> {
+            if (attempts.incrementAndGet() == 1)
+                throw status(HttpStatus.SERVICE_UNAVAILABLE, "1");
+            return "ok";
+        });
+        long start = System.nanoTime();
+        CountDownLatch other = new CountDownLatch(1);
+        dispatcher.execute(URL, other::countDown);
+
+        assertTrue(other.await(500, TimeUnit.MILLISECONDS));
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test
+    public void cancelledCallIsNotRetried() throws Exception {
+        RestCall call = newCall();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(1);
+        CompletableFuture<String> result = execute(new RestDispatcher(4, 1), call, () -> {
+            attempts.incrementAndGet();
+            failed.countDown();
+            throw status(HttpStatus.SERVICE_UNAVAILABLE, "1");
+        });
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        call.cancel();
+        Thread.sleep(1500);
+
+        assertFalse(result.isDone());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void expiredCallFailsWithLastError() throws Exception {
+        RestCall call = newCall();
+        call.expireAfter(50, TimeUnit.MILLISECONDS);
+        AtomicInteger attempts = new AtomicInteger();
+        RestClientException error = status(HttpStatus.SERVICE_UNAVAILABLE, "1");
+        CompletableFuture<String> result = execute(new RestDispatcher(4, 1), call, () -> {
+            attempts.incrementAndGet();
+            throw error;
+        });
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expired call is retried");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    /**
+     * Run exchange with retries in task of dispatcher like clients do
+     */
+    private CompletableFuture<String> execute(RestDispatcher dispatcher, RestCall call, Supplier<String> exchange) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        dispatcher.execute(URL, () -> call.run(() -> policy.execute(dispatcher, URL, RestDispatcher.Priority.NORMAL, call, exchange, outcome -> {
+            try {
+                result.complete(outcome.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        })));
+        return result;
+    }
+
+    private static RestClientException status(HttpStatus status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null)
+            headers.set("Retry-After", retryAfter);
+        return AsyncExchange.statusError(status, status.getReasonPhrase(), headers, new byte[0]);
+    }
+
+    private static RestCall newCall() {
+        return new RestCall(new Handler());
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.sasergeev.restclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSessionContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SSLHttpClientTest {
+    private static final String CERTIFICATE_A = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIBeDCCAR+gAwIBAgIUbL8rXevysfssRsamrPRCMIBUl88wCgYIKoZIzj0EAwIw\n"
+            + "ETEPMA0GA1UEAwwGaG9zdC1hMCAXDTI2MTAxODAxMzI1N1oYDzIxMjYwOTI0MDEz\n"
+            + "MjU3WjARMQ8wDQYDVQQDDAZob3N0LWEwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNC\n"
+            + "AAS4gtPQ+VPAUUoPtuXTFLRveTCvaeiy0slvs7NuFgnEzq/wBB0E35eXAad9IgbZ\n"
+            + "jhkavKxC2ZTiD7flsSnEDXKbo1MwUTAdBgNVHQ4EFgQUo2SBwBxidtGtq21fkTU3\n"
+            + "Hu/VvUkwHwYDVR0jBBgwFoAUo2SBwBxidtGtq21fkTU3Hu/VvUkwDwYDVR0TAQH/\n"
+            + "BAUwAwEB/zAKBggqhkjOPQQDAgNHADBEAiBGfTLxUdb6Ryc0jk0W4bfFrRNDSwuV\n"
+            + "pYIr6/6kpU4+KgIgZECG18D7IIeKZbxDU8kOXtCeWNxBGb1cXnzxD9tX0nY=\n"
+            + "-----END CERTIFICATE-----\n";
+    private static final String FINGERPRINT_A = "66441edfc0cc5ac0613aa3ce58a9aaf3d299842811e2347e01afe486456f8390";
+    private static final String CERTIFICATE_B = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIBeDCCAR+gAwIBAgIUZ/EPo9uCgKCTTWXgpyI7ZEn1/rMwCgYIKoZIzj0EAwIw\n"
+            + "ETEPMA0GA1UEAwwGaG9zdC1iMCAXDTI2MTAxODAxMzI1N1oYDzIxMjYwOTI0MDEz\n"
+            + "MjU3WjARMQ8wDQYDVQQDDAZob3N0LWIwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNC\n"
+            + "AASxX5L/HfgqjhQskDSLgZV6f9jM72hc3HT0PmidbCjfwZlu8u+JhRmbafPqASTM\n"
+            + "WE8KUQsh4Z+1/X/K8UoBnSl7o1MwUTAdBgNVHQ4EFgQU24xsZPmxJJdfxQm58sv6\n"
+            + "wL7+fiswHwYDVR0jBBgwFoAU24xsZPmxJJdfxQm58sv6wL7+fiswDwYDVR0TAQH/\n"
+            + "BAUwAwEB/zAKBggqhkjOPQQDAgNHADBEAiBHxc1gqZ8gdjG4ntp5wAjozOk/DKoR\n"
+            + "lDjgrFNyLp3bdwIgL/2RRe0m0L+AnbabgFfCBHSrKffcGGYg7PiX1ZGc8tg=\n"
+            + "-----END CERTIFICATE-----\n";
+
+    @Test
+    public void clientIsKeptByFingerprintOfCertificate() {
+        SSLHttpClient client = SSLHttpClient.getInstance(stream(CERTIFICATE_A));
+
+        assertEquals(FINGERPRINT_A, client.getFingerprint());
+        assertSame(client, SSLHttpClient.getInstance(stream(CERTIFICATE_A)));
+        assertSame(client, SSLHttpClient.getInstance(der(CERTIFICATE_A)));
+        assertNotSame(client, SSLHttpClient.getInstance(stream(CERTIFICATE_B)));
+    }
+
+    @Test
+    public void invalidCertificateIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> SSLHttpClient.getInstance(new ByteArrayInputStream("not a certificate".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void sessionsAreCachedForResumption() {
+        SSLSessionContext sessionContext = SSLHttpClient.defaultContext().getClientSessionContext();
+
+        assertEquals(64, sessionContext.getSessionCacheSize());
+        assertEquals(TimeUnit.HOURS.toSeconds(12), sessionContext.getSessionTimeout());
+    }
+
+    @Test
+    public void engineIsKeptByFingerprintAndSharesContextOfClient() {
+        RestEngine engine = RestEngine.ssl(stream(CERTIFICATE_A));
+        SSLHttpClient client = SSLHttpClient.getInstance(stream(CERTIFICATE_A));
+
+        assertSame(engine, RestEngine.ssl(der(CERTIFICATE_A)));
+        assertNotSame(engine, RestEngine.ssl(stream(CERTIFICATE_B)));
+        assertNotSame(client, engine.getHttpClient());
+        assertSame(client.getSslSocketFactory(), engine.getHttpClient().getSslSocketFactory());
+        assertTrue(engine.getHttpClient().interceptors().contains(CircuitBreaker.INTERCEPTOR));
+        assertFalse(client.interceptors().contains(CircuitBreaker.INTERCEPTOR));
+        assertFalse(client.networkInterceptors().contains(RestDispatcher.INTERCEPTOR));
+    }
+
+    private static InputStream stream(String pem) {
+        return new ByteArrayInputStream(pem.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static InputStream der(String pem) {
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        return new ByteArrayInputStream(Base64.getDecoder().decode(base64));
+    }
+}
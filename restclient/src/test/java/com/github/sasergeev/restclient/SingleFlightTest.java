@@ -0,0 +1,79 @@
+package com.github.sasergeev.restclient;
+
+import android.os.Handler;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final AtomicInteger started = new AtomicInteger();
+    private final CompletableFuture<ResponseEntity<String>> network = new CompletableFuture<>();
+
+    @Test
+    public void identicalRequestsShareOneNetworkCall() {
+        CompletableFuture<ResponseEntity<String>> first = join("a", newCall());
+        CompletableFuture<ResponseEntity<String>> second = join("a", newCall());
+        assertEquals(1, started.get());
+
+        network.complete(new ResponseEntity<>("body", HttpStatus.OK));
+        assertEquals("body", first.join().getBody());
+        assertEquals("body", second.join().getBody());
+    }
+
+    @Test
+    public void finishedFlightIsNotJoined() {
+        join("a", newCall());
+        network.complete(new ResponseEntity<>("body", HttpStatus.OK));
+        join("a", newCall());
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void differentRequestsDoNotShareNetworkCall() {
+        join("a", newCall());
+        join("b", newCall());
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void networkCallIsCancelledWhenAllWaitersLeave() {
+        RestCall first = newCall();
+        RestCall second = newCall();
+        join("a", first);
+        join("a", second);
+
+        first.cancel();
+        assertFalse(network.isCancelled());
+        second.cancel();
+        assertTrue(network.isCancelled());
+    }
+
+    @Test
+    public void cancelledFlightIsNotJoined() {
+        RestCall first = newCall();
+        join("a", first);
+        first.cancel();
+        join("a", newCall());
+        assertEquals(2, started.get());
+    }
+
+    private CompletableFuture<ResponseEntity<String>> join(String key, RestCall call) {
+        return singleFlight.join(key, call, () -> {
+            started.incrementAndGet();
+            return network;
+        });
+    }
+
+    private static RestCall newCall() {
+        return new RestCall(new Handler());
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.sasergeev.restclient;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Expected URIs are the ones of Spring's UriTemplate
+ */
+public class UrlTemplateTest {
+    @Test
+    public void variablesAreEncodedForTheirPartOfUri() {
+        assertEquals("https://host/api/a%20b/c?q=1%2B1%3D2%26x",
+                expand("https://host/api/{id}?q={q}", "a b/c", "1+1=2&x"));
+        assertEquals("https://host/api/x+y;z,w:v@u?q=a;b:c@d!$'()*,/?%23",
+                expand("https://host/api/{id}?q={q}", "x+y;z,w:v@u", "a;b:c@d!$'()*,/?#"));
+        assertEquals("https://host/api/%2520#a?b%23c", expand("https://host/api/{id}#{f}", "%20", "a?b#c"));
+        assertEquals("https://user:pw@host/%5B%5D%7B%7D%7C%5C%5E%60%22%3C%3E/", expand("https://user:pw@host/{id}/", "[]{}|\\^`\"<>"));
+    }
+
+    @Test
+    public void nonAsciiIsEncodedAsUtf8() {
+        assertEquals("https://host/api/%D0%B6%E2%82%AC?q=%C3%BCn%C3%AF%20%F0%9F%98%80",
+                expand("https://host/api/{id}?q={q}", "\u0436\u20ac", "\u00fcn\u00ef \uD83D\uDE00"));
+    }
+
+    @Test
+    public void literalsAreEncodedButKeepStructure() {
+        assertEquals("https://host/a+b/x?q=a%2Bb&r=1", expand("https://host/a+b/{id}?q=a+b&r={r}", "x", "1"));
+        assertEquals("https://host/a%20b/x?q=a%20b;c:d@e", expand("https://host/a b/{id}?q=a b;c:d@e", "x"));
+    }
+
+    @Test
+    public void hostAndRelativeTemplates() {
+        assertEquals("http://example.com:8080/items/x;y,z", expand("http://{host}:8080/items/{id}", "example.com", "x;y,z"));
+        assertEquals("api/v1/7?page=%2B", expand("api/v1/{id}?page={page}", "7", "+"));
+    }
+
+    @Test
+    public void nullValueIsEmpty() {
+        assertEquals("https://host/items/?q=", expand("https://host/items/{id}?q={q}", null, null));
+    }
+
+    @Test
+    public void expandByNames() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", 42);
+        values.put("page", "a&b");
+        assertEquals("https://host/42/42?page=a%26b", UrlTemplate.parse("https://host/{id}/{id}?page={page}").expand(values).toString());
+    }
+
+    @Test
+    public void patternOfVariableIsNotPartOfName() {
+        UrlTemplate template = UrlTemplate.parse("https://host/{id:\\d+}/{ name }");
+        assertEquals(Arrays.asList("id", "name"), template.getVariableNames());
+        assertEquals("https://host/1/n", template.expand(1, "n").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notEnoughValues() {
+        UrlTemplate.parse("https://host/{id}/{name}").expand(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingValueByName() {
+        UrlTemplate.parse("https://host/{id}").expand(new HashMap<String, Object>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unclosedVariable() {
+        UrlTemplate.parse("https://host/{id");
+    }
+
+    private static String expand(String template, Object... values) {
+        return UrlTemplate.parse(template).expand(values).toString();
+    }
+}